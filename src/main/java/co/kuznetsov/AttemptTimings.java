@@ -0,0 +1,168 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Monotonic timestamps of a single connection attempt, split into the phases it went through.
+ */
+public class AttemptTimings {
+    public enum Phase {
+        DNS("dnsDuration"),
+        TCP_CONNECT("tcpConnectDuration"),
+        SERVER_GREETING("serverGreetingDuration"),
+        TLS("tlsDuration"),
+        AUTH("authDuration"),
+        SESSION("sessionDuration"),
+        FIRST_QUERY("firstQueryDuration");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final int PHASES = Phase.values().length;
+
+    private final long startNanos;
+    private final long[] phaseEndNanos = new long[PHASES];
+    private boolean success;
+    private final AtomicReference<AutoCloseable> connection = new AtomicReference<>();
+    private volatile boolean aborted;
+
+    public AttemptTimings(long startNanos) {
+        this.startNanos = startNanos;
+        Arrays.fill(phaseEndNanos, -1);
+    }
+
+    public void phaseDone(Phase phase) {
+        phaseEndNanos[phase.ordinal()] = System.nanoTime();
+    }
+
+    public void succeeded() {
+        this.success = true;
+    }
+
+    /**
+     * Registers the socket or connection the attempt is using, so {@link #abort()} can close it from another thread.
+     * Every tracked connection must be {@link #release() released} once the probe closed it.
+     *
+     * @throws InterruptedIOException if the attempt was already aborted, after closing the connection
+     */
+    public void track(AutoCloseable connection) throws IOException {
+        this.connection.set(connection);
+        ProbeGauges.connectionOpened();
+        if (aborted) {
+            closeQuietly(connection);
+            throw new InterruptedIOException("Attempt aborted");
+        }
+    }
+
+    /**
+     * Forgets the tracked connection after the probe closed it.
+     */
+    public void release() {
+        if (connection.getAndSet(null) != null) {
+            ProbeGauges.connectionClosed();
+        }
+    }
+
+    /**
+     * Closes the tracked connection, failing whatever blocking call the attempt is in.
+     */
+    public void abort() {
+        aborted = true;
+        AutoCloseable tracked = connection.get();
+        if (tracked != null) {
+            closeQuietly(tracked);
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    private static void closeQuietly(AutoCloseable connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            // Already closed or broken, either way it no longer holds the attempt
+        }
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return phase duration in nanoseconds, or -1 if the attempt never finished that phase
+     */
+    public long getPhaseNanos(Phase phase) {
+        long end = phaseEndNanos[phase.ordinal()];
+        if (end < 0) {
+            return -1;
+        }
+        long previousEnd = startNanos;
+        for (int i = phase.ordinal() - 1; i >= 0; i--) {
+            if (phaseEndNanos[i] >= 0) {
+                previousEnd = phaseEndNanos[i];
+                break;
+            }
+        }
+        return end - previousEnd;
+    }
+
+    /**
+     * @return nanoseconds from the start of the attempt to the end of the last phase it finished
+     */
+    public long getTotalNanos() {
+        long end = startNanos;
+        for (long phaseEnd : phaseEndNanos) {
+            end = Math.max(end, phaseEnd);
+        }
+        return end - startNanos;
+    }
+
+    /**
+     * @return the last phase the attempt finished, or null if it finished none
+     */
+    public Phase getLastPhase() {
+        Phase last = null;
+        long lastEnd = -1;
+        for (Phase phase : Phase.values()) {
+            if (phaseEndNanos[phase.ordinal()] > lastEnd) {
+                last = phase;
+                lastEnd = phaseEndNanos[phase.ordinal()];
+            }
+        }
+        return last;
+    }
+
+    public double getPhaseMillis(Phase phase) {
+        long nanos = getPhaseNanos(phase);
+        return nanos < 0 ? -1 : nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AttemptTimings{success=").append(success);
+        for (Phase phase : Phase.values()) {
+            if (getPhaseNanos(phase) >= 0) {
+                sb.append(", ").append(phase.getMetricName()).append('=').append(String.format("%.3f", getPhaseMillis(phase)));
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,102 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.rds.RdsClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide AWS clients. SDK clients are thread safe and each one owns an HTTP connection pool, so they are built
+ * once per process (per endpoint for RDS) and never closed by callers.
+ * <p>
+ * SDK retries are off: every call goes through {@link Retries}, so its budget, circuit breakers and retry and throttle
+ * counters see each attempt.
+ */
+public class AwsClients {
+    private static final int MAX_CONNECTIONS = 64;
+    private static final Duration CONNECTION_MAX_IDLE = Duration.ofSeconds(60);
+    private static final Duration CONNECTION_TIME_TO_LIVE = Duration.ofMinutes(10);
+    private static final ClientOverrideConfiguration NO_SDK_RETRIES = ClientOverrideConfiguration.builder()
+            .retryPolicy(software.amazon.awssdk.core.retry.RetryPolicy.none())
+            .build();
+
+    private static final Map<String, Object> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, Long> BUILD_MILLIS = new ConcurrentHashMap<>();
+    private static final AtomicLong CREATED = new AtomicLong();
+
+    private AwsClients() {
+    }
+
+    public static RdsClient rds(URI endpoint) {
+        return get("rds:" + endpoint, () -> RdsClient.builder()
+                .endpointOverride(endpoint)
+                .httpClient(newHttpClient())
+                .overrideConfiguration(NO_SDK_RETRIES)
+                .build());
+    }
+
+    public static CloudWatchClient cloudWatch() {
+        return get("cloudwatch", () -> CloudWatchClient.builder()
+                .httpClient(newHttpClient())
+                .overrideConfiguration(NO_SDK_RETRIES)
+                .build());
+    }
+
+    public static CloudWatchLogsClient cloudWatchLogs() {
+        return get("logs", () -> CloudWatchLogsClient.builder()
+                .httpClient(newHttpClient())
+                .overrideConfiguration(NO_SDK_RETRIES)
+                .build());
+    }
+
+    public static Ec2Client ec2() {
+        return get("ec2", () -> Ec2Client.builder()
+                .httpClient(newHttpClient())
+                .overrideConfiguration(NO_SDK_RETRIES)
+                .build());
+    }
+
+    /**
+     * Clients built since the process started, which stays at the registry size as long as every client is shared,
+     * and how long each client took to build, keyed by client name.
+     */
+    public static String describe() {
+        Map<String, String> report = new TreeMap<>();
+        BUILD_MILLIS.forEach((name, millis) -> report.put(name, "built in " + millis + "ms"));
+        return CREATED.get() + " created, " + CLIENTS.size() + " registered " + report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T get(String name, Supplier<T> factory) {
+        return (T) CLIENTS.computeIfAbsent(name, key -> {
+            long started = System.nanoTime();
+            T client = factory.get();
+            CREATED.incrementAndGet();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            BUILD_MILLIS.put(key, millis);
+            Log.info("aws.clientCreated", "client", key, "buildMillis", millis);
+            return client;
+        });
+    }
+
+    private static SdkHttpClient newHttpClient() {
+        return ApacheHttpClient.builder()
+                .maxConnections(MAX_CONNECTIONS)
+                .tcpKeepAlive(true)
+                .connectionMaxIdleTime(CONNECTION_MAX_IDLE)
+                .connectionTimeToLive(CONNECTION_TIME_TO_LIVE)
+                .build();
+    }
+}
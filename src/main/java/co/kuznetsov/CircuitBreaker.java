@@ -0,0 +1,72 @@
+package co.kuznetsov;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calls to one API after {@code failureThreshold} failures in a row. While open, callers wait out
+ * {@code openMillis}; then a single trial call is let through and the others keep waiting until it tells whether the
+ * API has recovered.
+ */
+public class CircuitBreaker {
+    private static final long TRIAL_POLL_MILLIS = 50;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean open;
+    private boolean trialInFlight;
+    private long opened;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return 0 if the call may go ahead, otherwise milliseconds to wait before asking again
+     */
+    public synchronized long admit() {
+        if (!open) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (now - openUntil < 0) {
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(openUntil - now));
+        }
+        if (trialInFlight) {
+            return TRIAL_POLL_MILLIS;
+        }
+        trialInFlight = true;
+        return 0;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (trialInFlight || (!open && consecutiveFailures >= failureThreshold)) {
+            if (!open) {
+                opened++;
+            }
+            open = true;
+            trialInFlight = false;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return how many times the breaker went from closed to open
+     */
+    public synchronized long getOpened() {
+        return opened;
+    }
+}
@@ -0,0 +1,140 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InputLogEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends resume events to CloudWatch as metric datums and, when a log group is given, as one CloudWatch Logs line per
+ * resume, through a {@link MetricsPublisher}. With an aggregation window, datums are folded by a
+ * {@link MetricsAggregator} and sent once per window; otherwise every resume is sent as is.
+ */
+public class CloudWatchSink implements MetricsSink {
+    private final MetricsPublisher publisher;
+    private final boolean logs;
+    private final DimensionSets dimensionSets;
+    private final MetricsAggregator aggregator;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * @param logGroupName null to only send metrics
+     * @param aggregationWindow zero to send one datum per resume, metric and rollup
+     */
+    public CloudWatchSink(String namespace, String logGroupName, String logStreamName, DimensionSets dimensionSets, Duration aggregationWindow) {
+        this.publisher = new MetricsPublisher(namespace, logGroupName, logStreamName);
+        this.logs = logGroupName != null;
+        this.dimensionSets = dimensionSets;
+        if (aggregationWindow.isZero()) {
+            this.aggregator = null;
+            this.timer = null;
+        } else {
+            this.aggregator = new MetricsAggregator(dimensionSets, aggregationWindow);
+            this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "metrics-aggregator");
+                t.setDaemon(true);
+                return t;
+            });
+            long windowMillis = aggregationWindow.toMillis();
+            this.timer.scheduleAtFixedRate(this::flushAggregates, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void accept(ResumeEvent event) {
+        if (aggregator != null) {
+            aggregator.add(event);
+        } else {
+            publisher.publish(datums(event, dimensionSets));
+        }
+        if (logs) {
+            publisher.publishLog(InputLogEvent.builder()
+                    .message(logMessage(event))
+                    .timestamp(event.getStartedAt().toEpochMilli())
+                    .build());
+        }
+    }
+
+    @Override
+    public void acceptFleetMetric(String metricName, long millis) {
+        publisher.publish(List.of(MetricDatum.builder()
+                .metricName(metricName)
+                .unit(StandardUnit.MILLISECONDS)
+                .timestamp(Instant.now())
+                .value((double) millis)
+                .build()));
+    }
+
+    @Override
+    public String describe() {
+        String aggregated = aggregator == null ? "" :
+                aggregator.getEvents() + " resumes aggregated into " + aggregator.getDatums() + " datums, ";
+        return "CloudWatch: " + aggregated + publisher.getQueuedDatums() + " datums queued, " +
+                publisher.getPublishedDatums() + " published in " + publisher.getRequests() + " requests, " +
+                publisher.getDroppedDatums() + " dropped";
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            flushAggregates();
+        }
+        publisher.shutdown();
+    }
+
+    private void flushAggregates() {
+        try {
+            publisher.publish(aggregator.drain());
+        } catch (RuntimeException e) {
+            Exceptions.capture(e);
+        }
+    }
+
+    static List<MetricDatum> datums(ResumeEvent event, DimensionSets dimensionSets) {
+        List<MetricDatum> datums = new ArrayList<>();
+        for (List<Dimension> rollup : dimensionSets.rollups(event.getDimensions())) {
+            event.getCounts().forEach((name, count) -> datums.add(datum(event, name, count, StandardUnit.COUNT, rollup)));
+            event.getDurations().forEach((name, millis) -> datums.add(datum(event, name, millis, StandardUnit.MILLISECONDS, rollup)));
+            event.getPhaseMillis().forEach((name, millis) -> datums.add(datum(event, name, millis, StandardUnit.MILLISECONDS, rollup)));
+        }
+        return datums;
+    }
+
+    private static MetricDatum datum(ResumeEvent event, String metricName, Number value, StandardUnit unit, List<Dimension> dimensions) {
+        MetricDatum.Builder datum = MetricDatum.builder()
+                .metricName(metricName)
+                .unit(unit)
+                .timestamp(event.getStartedAt())
+                .value(value.doubleValue());
+        if (!dimensions.isEmpty()) {
+            datum.dimensions(dimensions);
+        }
+        return datum.build();
+    }
+
+    private static String logMessage(ResumeEvent event) {
+        StringBuilder sb = new StringBuilder("Resume for ");
+        String separator = "";
+        for (Map.Entry<String, String> dimension : event.getDimensions().entrySet()) {
+            sb.append(separator).append(dimension.getKey()).append(": ").append(dimension.getValue());
+            separator = " , ";
+        }
+        return sb.append(String.format(
+                ". Outcome: [success=%b, noSleep=%b, clientInterrupt=%b, connectionDrop=%b, duration=%d, durationHighRes=%d]",
+                event.isSuccess(),
+                event.getNoSleep() != null && event.getNoSleep(),
+                event.isClientInterrupt(),
+                event.isConnectionDrop(),
+                event.getResumeDuration(),
+                event.getResumeDurationHighRes())).toString();
+    }
+}
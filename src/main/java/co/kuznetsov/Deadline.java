@@ -0,0 +1,51 @@
+package co.kuznetsov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cooperative cancellation token for probe loops, checked between attempts. A deadline is over once its time is up,
+ * once it is cancelled, or once the thread checking it has been interrupted.
+ */
+public class Deadline {
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isOver() {
+        return cancelled || Thread.currentThread().isInterrupted() || System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Sleeps for the given time or until the deadline, whichever comes first, waking up early on cancellation.
+     *
+     * @return false if the deadline is over
+     */
+    public boolean sleep(long millis) {
+        long wakeUp = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(millis, remainingMillis()));
+        long now;
+        while (!isOver() && (now = System.nanoTime()) < wakeUp) {
+            LockSupport.parkNanos(Math.min(wakeUp - now, TimeUnit.MILLISECONDS.toNanos(10)));
+        }
+        return !isOver();
+    }
+}
@@ -0,0 +1,58 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableList;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dimension combinations every metric is rolled up by, declared as "none" for no dimensions or dimension names
+ * joined by '+', e.g. "none", "instanceId", "engineVersion" or "instanceId+engineVersion".
+ */
+public class DimensionSets {
+    public static final String NONE = "none";
+
+    private final List<List<String>> sets;
+
+    public DimensionSets(List<List<String>> sets) {
+        this.sets = ImmutableList.copyOf(sets);
+    }
+
+    public static DimensionSets parse(List<String> specs) {
+        List<List<String>> sets = new ArrayList<>();
+        for (String spec : specs) {
+            String trimmed = spec.trim();
+            sets.add(trimmed.isEmpty() || trimmed.equalsIgnoreCase(NONE)
+                    ? ImmutableList.of()
+                    : ImmutableList.copyOf(trimmed.split("\\+")));
+        }
+        return new DimensionSets(sets);
+    }
+
+    /**
+     * @return the dimensions of each declared set, skipping sets naming a dimension the event does not have
+     */
+    public List<List<Dimension>> rollups(Map<String, String> dimensions) {
+        List<List<Dimension>> rollups = new ArrayList<>(sets.size());
+        nextSet:
+        for (List<String> set : sets) {
+            List<Dimension> rollup = new ArrayList<>(set.size());
+            for (String name : set) {
+                String value = dimensions.get(name);
+                if (value == null) {
+                    continue nextSet;
+                }
+                rollup.add(Dimension.builder().name(name).value(value).build());
+            }
+            rollups.add(rollup);
+        }
+        return rollups;
+    }
+
+    @Override
+    public String toString() {
+        return sets.toString();
+    }
+}
@@ -1,62 +1,91 @@
 package co.kuznetsov;
 
-import java.sql.DriverManager;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class DoorKnockRunnable implements Runnable {
+public class DoorKnockRunnable implements ProbeRunnable {
+    public static final int CONNECT_TIMEOUT_MILLIS = 45000;
+
     private final AtomicReference<ResumeOutcome> outcomeRef;
-    private final String endpoint;
-    private final int port;
-    private final String username;
-    private final String password;
-    private final String dbName;
-    private final long maxWaitMillis;
-    private final String engineDriver;
+    private final Probe probe;
+    private final Deadline deadline;
+    private final String instanceId;
+    private volatile AttemptTimings current;
 
     public DoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, String endpoint, int port, String username, String password, long maxWaitMillis) {
         this(outcomeRef, endpoint, port, "mysql", username, password, "", maxWaitMillis);
     }
 
     public DoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, String endpoint, int port, String engineDriver, String username, String password, String dbName, long maxWaitMillis) {
-        this.outcomeRef = outcomeRef;
-        this.endpoint = endpoint;
-        this.port = port;
-        this.engineDriver = engineDriver;
-        this.username = username;
-        this.password = password;
-        this.dbName = dbName;
-        this.maxWaitMillis = maxWaitMillis;
+        this(outcomeRef, new JdbcProbe(engineDriver, endpoint, port, dbName, username, password, CONNECT_TIMEOUT_MILLIS, false), maxWaitMillis);
+    }
+
+    public DoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, Probe probe, long maxWaitMillis) {
+        this(outcomeRef, probe, maxWaitMillis, null);
     }
 
+    /**
+     * @param instanceId instance the probe runs against, for log records only
+     */
+    public DoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, Probe probe, long maxWaitMillis, String instanceId) {
+        this.outcomeRef = outcomeRef;
+        this.probe = probe;
+        this.deadline = Deadline.after(maxWaitMillis);
+        this.instanceId = instanceId;
+    }
 
     @Override
     public void run() {
-        Properties properties = new Properties();
-        properties.setProperty("user", username);
-        properties.setProperty("password", password);
-        properties.setProperty("connectTimeout", "45000");
+        ProbeGauges.probeStarted();
+        try {
+            knockUntilDeadline();
+        } finally {
+            ProbeGauges.probeFinished();
+        }
+    }
 
-        long start = System.currentTimeMillis();
+    private void knockUntilDeadline() {
+        long start = System.nanoTime();
         boolean drop = false;
+        int attempts = 0;
+        AttemptTimings attempt = null;
 
-        while ((System.currentTimeMillis() - start) < maxWaitMillis) {
-            System.out.println("Connecting to DB...");
-            try (var conn = DriverManager.getConnection("jdbc:" + engineDriver + "://" + endpoint + ":" + port + "/" + dbName, properties)) {
-                conn.createStatement().execute("SELECT 1");
-                System.out.println("Success!");
-            } catch (SQLException e) {
-                System.out.println(e);
+        while (!deadline.isOver()) {
+            attempt = new AttemptTimings(System.nanoTime());
+            current = attempt;
+            if (deadline.isCancelled()) {
+                attempt.abort();
+            }
+            attempts++;
+            try {
+                probe.knock(attempt);
+                Log.info("probe.success", "instanceId", instanceId, "attempt", attempts, "timings", attempt);
+            } catch (SQLException | IOException e) {
+                Log.info("probe.failure", "instanceId", instanceId, "attempt", attempts,
+                        "phase", attempt.getLastPhase(), "error", e);
                 Exceptions.capture(e);
                 drop = true;
                 continue;
             }
-            var durationMillis = System.currentTimeMillis() - start;
-            outcomeRef.set(new ResumeOutcome(drop, false, durationMillis, false));
+            outcomeRef.set(new ResumeOutcome(drop, false, elapsedMillis(start), false, attempts, attempt));
             return;
         }
-        var durationMillis = System.currentTimeMillis() - start;
-        outcomeRef.set(new ResumeOutcome(true, true, durationMillis, false));
+        boolean interrupted = deadline.isCancelled() || Thread.currentThread().isInterrupted();
+        outcomeRef.set(new ResumeOutcome(true, true, elapsedMillis(start), interrupted, attempts, attempt));
+    }
+
+    @Override
+    public void cancel() {
+        deadline.cancel();
+        AttemptTimings attempt = current;
+        if (attempt != null) {
+            attempt.abort();
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 }
@@ -0,0 +1,110 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * When each step of moving the DB ENI happened during a resume: the detach from the sleeper and the attach to the DB
+ * instance, each from the request until the ENI was seen in the new state. Together with the probe timeline this
+ * splits the resume into EC2 time and the time the database took to answer once its ENI was in use.
+ * <p>
+ * A step is dated to the middle of the polls that last missed and first saw the new state, so it is off by up to half
+ * the gap between them, which is reported alongside. The first query can therefore come out before the attach.
+ */
+public class EniMoveTimeline {
+    public static final String DETACH_DURATION = "eniDetachDuration";
+    public static final String ATTACH_DURATION = "eniAttachDuration";
+    public static final String ATTACH_TO_FIRST_QUERY = "eniAttachToFirstQuery";
+    public static final String ATTACH_SEEN_WINDOW = "eniAttachSeenWindow";
+
+    private volatile Instant detachRequested;
+    private volatile EniTracker.Observation detached;
+    private volatile Instant attachRequested;
+    private volatile EniTracker.Observation attached;
+
+    public void detachRequested(Instant at) {
+        detachRequested = at;
+    }
+
+    public void detached(EniTracker.Observation seen) {
+        detached = seen;
+    }
+
+    public void attachRequested(Instant at) {
+        attachRequested = at;
+    }
+
+    public void attached(EniTracker.Observation seen) {
+        attached = seen;
+    }
+
+    /**
+     * @return end of the first successful query of the resume, whichever probe got it, or null if the resume failed
+     */
+    static Instant firstQuery(ResumeStats stats) {
+        if (stats.isFailure()) {
+            return null;
+        }
+        long duration = stats.getResumeDuration();
+        if (stats.getResumeDurationHighRes() != null) {
+            duration = Math.min(duration, stats.getResumeDurationHighRes());
+        }
+        return stats.getStartedAt().plusMillis(duration);
+    }
+
+    /**
+     * The attach-to-first-query phase is negative when the query got through before the estimated attach, which the
+     * polling interval allows for; the attach seen window says by how much it may be off.
+     *
+     * @return durations of the phases that were measured, in milliseconds, keyed by metric name
+     */
+    public ImmutableMap<String, Double> getPhaseMillis(ResumeStats stats) {
+        ImmutableMap.Builder<String, Double> phases = ImmutableMap.builder();
+        if (detachRequested != null && detached != null) {
+            phases.put(DETACH_DURATION, millis(detachRequested, detached.getEstimatedAt()));
+        }
+        if (attachRequested != null && attached != null) {
+            phases.put(ATTACH_DURATION, millis(attachRequested, attached.getEstimatedAt()));
+        }
+        if (attached != null && attached.getMissedAt() != null) {
+            phases.put(ATTACH_SEEN_WINDOW, millis(attached.getMissedAt(), attached.getSeenAt()));
+        }
+        Instant firstQuery = firstQuery(stats);
+        if (attached != null && firstQuery != null) {
+            phases.put(ATTACH_TO_FIRST_QUERY, millis(attached.getEstimatedAt(), firstQuery));
+        }
+        return phases.build();
+    }
+
+    /**
+     * @return each step as milliseconds after the start of the resume, with the first successful query
+     */
+    public String describe(ResumeStats stats) {
+        Instant start = stats.getStartedAt();
+        return "detachRequested=" + offset(start, detachRequested) +
+                ", detached=" + offset(start, detached) +
+                ", attachRequested=" + offset(start, attachRequested) +
+                ", attached=" + offset(start, attached) +
+                ", firstQuery=" + offset(start, firstQuery(stats));
+    }
+
+    private static String offset(Instant start, Instant at) {
+        return at == null ? "-" : String.format("%+.1fms", millis(start, at));
+    }
+
+    /**
+     * @return the poll that first saw the state, preceded by the one that last missed it if there was one
+     */
+    private static String offset(Instant start, EniTracker.Observation seen) {
+        if (seen == null) {
+            return "-";
+        }
+        return (seen.getMissedAt() == null ? "" : offset(start, seen.getMissedAt()) + "..") + offset(start, seen.getSeenAt());
+    }
+
+    private static double millis(Instant from, Instant to) {
+        return Duration.between(from, to).toNanos() / 1e6;
+    }
+}
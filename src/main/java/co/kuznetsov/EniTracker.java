@@ -0,0 +1,227 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Tracks the state of the ENIs being waited for with a single poller: one DescribeNetworkInterfaces call covers every
+ * tracked ENI, and a waiter's future completes on the first poll that sees its ENI in the wanted state.
+ * <p>
+ * Polls are tight when a wait starts, which is right after the attach or detach is requested, and whenever a
+ * tracked ENI changes status; otherwise the interval grows by half each poll up to the maximum. Nothing is polled
+ * while nobody waits.
+ */
+public class EniTracker implements AutoCloseable {
+    private final Ec2Client ec2;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong polls = new AtomicLong();
+    private final Thread poller;
+    private long intervalNanos;
+    private long nextPollNanos;
+    private volatile boolean running = true;
+
+    public EniTracker(Ec2Client ec2, long minIntervalMillis, long maxIntervalMillis) {
+        this.ec2 = ec2;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.maxIntervalNanos = TimeUnit.MILLISECONDS.toNanos(maxIntervalMillis);
+        this.intervalNanos = minIntervalNanos;
+        this.nextPollNanos = System.nanoTime();
+        this.poller = new Thread(this::pollLoop, "eni-tracker");
+        this.poller.setDaemon(true);
+        this.poller.start();
+    }
+
+    /**
+     * Describes the ENIs in one call.
+     */
+    public Map<String, NetworkInterface> describe(Collection<String> eniIds) {
+        Map<String, NetworkInterface> enis = new HashMap<>();
+        Retries.call("ec2.DescribeNetworkInterfaces", RetryPolicy.DESCRIBE, () ->
+                ec2.describeNetworkInterfaces(DescribeNetworkInterfacesRequest.builder()
+                        .networkInterfaceIds(eniIds)
+                        .build()))
+                .networkInterfaces()
+                .forEach(eni -> enis.put(eni.networkInterfaceId(), eni));
+        return enis;
+    }
+
+    /**
+     * @return completes with the first observation of the ENI matching {@code until}, or with a
+     * {@link TimeoutException} if there is none within {@code timeoutMillis}
+     */
+    public CompletableFuture<Observation> await(String eniId, Predicate<NetworkInterface> until, long timeoutMillis) {
+        Waiter waiter = new Waiter(eniId, until);
+        waiters.add(waiter);
+        waiter.observed.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((o, e) -> {
+            waiters.remove(waiter);
+            if (e instanceof TimeoutException) {
+                Log.warn("eni.waitTimeout", "eniId", eniId, "timeoutMillis", timeoutMillis);
+            }
+        });
+        requested();
+        return waiter.observed;
+    }
+
+    /**
+     * Polls again right away and tightens the interval.
+     */
+    private synchronized void requested() {
+        intervalNanos = minIntervalNanos;
+        nextPollNanos = System.nanoTime();
+        notifyAll();
+    }
+
+    public String describe() {
+        return waiters.size() + " waiting on " + statuses.size() + " ENIs, " + polls.get() + " polls, interval " +
+                TimeUnit.NANOSECONDS.toMillis(currentIntervalNanos()) + "ms";
+    }
+
+    private synchronized long currentIntervalNanos() {
+        return intervalNanos;
+    }
+
+    private void pollLoop() {
+        while (running) {
+            synchronized (this) {
+                try {
+                    while (running) {
+                        long untilPoll = nextPollNanos - System.nanoTime();
+                        if (waiters.isEmpty()) {
+                            wait(TimeUnit.NANOSECONDS.toMillis(maxIntervalNanos));
+                        } else if (untilPoll > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, untilPoll);
+                        } else {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            boolean changed = false;
+            try {
+                changed = poll();
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+            }
+            synchronized (this) {
+                intervalNanos = changed ? minIntervalNanos : Math.min(maxIntervalNanos, intervalNanos + intervalNanos / 2);
+                nextPollNanos = System.nanoTime() + intervalNanos;
+            }
+        }
+    }
+
+    /**
+     * @return whether any tracked ENI changed status
+     */
+    private boolean poll() {
+        Set<String> eniIds = ConcurrentHashMap.newKeySet();
+        waiters.forEach(w -> eniIds.add(w.eniId));
+        if (eniIds.isEmpty()) {
+            return false;
+        }
+        Map<String, NetworkInterface> enis = describe(eniIds);
+        Instant seenAt = Instant.now();
+        polls.incrementAndGet();
+        boolean changed = false;
+        for (NetworkInterface eni : enis.values()) {
+            String status = String.valueOf(eni.status());
+            String before = statuses.put(eni.networkInterfaceId(), status);
+            if (before != null && !Objects.equals(before, status)) {
+                changed = true;
+            }
+        }
+        for (Waiter waiter : waiters) {
+            NetworkInterface eni = enis.get(waiter.eniId);
+            if (eni == null) {
+                continue;
+            }
+            if (waiter.until.test(eni)) {
+                waiter.observed.complete(new Observation(eni, seenAt, waiter.missedAt));
+            } else {
+                Log.info("eni.wait", "eniId", waiter.eniId, "status", String.valueOf(eni.status()));
+                waiter.missedAt = seenAt;
+            }
+        }
+        statuses.keySet().retainAll(eniIds);
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        poller.interrupt();
+    }
+
+    /**
+     * An ENI as seen by a poll. The state it is in was reached after {@link #getMissedAt()}, when the previous poll
+     * still saw it otherwise, and before {@link #getSeenAt()}.
+     */
+    public static class Observation {
+        private final NetworkInterface eni;
+        private final Instant seenAt;
+        private final Instant missedAt;
+
+        Observation(NetworkInterface eni, Instant seenAt, Instant missedAt) {
+            this.eni = eni;
+            this.seenAt = seenAt;
+            this.missedAt = missedAt;
+        }
+
+        public NetworkInterface getEni() {
+            return eni;
+        }
+
+        public Instant getSeenAt() {
+            return seenAt;
+        }
+
+        /**
+         * @return the previous poll, or null if the ENI was already in the state when the wait started
+         */
+        public Instant getMissedAt() {
+            return missedAt;
+        }
+
+        /**
+         * @return halfway between the previous poll and this one, the best guess of when the state was reached; the
+         * time of this poll if there was no previous one
+         */
+        public Instant getEstimatedAt() {
+            if (missedAt == null) {
+                return seenAt;
+            }
+            return missedAt.plus(Duration.between(missedAt, seenAt).dividedBy(2));
+        }
+    }
+
+    private static class Waiter {
+        private final String eniId;
+        private final Predicate<NetworkInterface> until;
+        private final CompletableFuture<Observation> observed = new CompletableFuture<>();
+        private volatile Instant missedAt;
+
+        private Waiter(String eniId, Predicate<NetworkInterface> until) {
+            this.eniId = eniId;
+            this.until = until;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts exceptions by fingerprint (exception class and the frame that threw it) and has a background thread write a
+ * stack trace to the exception directory the first time a fingerprint is seen and at most once per
+ * {@code dumpIntervalNanos} after that. Recording only updates counters and offers to a bounded queue, so it is cheap
+ * enough for probe loops that fail thousands of times during a resume.
+ */
+public class ExceptionRecorder {
+    private static final int MAX_FINGERPRINTS = 1024;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final String LOG_FILE = "exceptions.log";
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int keepFiles;
+    private final long dumpIntervalNanos;
+    private final Map<Long, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    private final BlockingQueue<Dump> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong untracked = new AtomicLong();
+    private final AtomicLong dumped = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread writer;
+
+    public ExceptionRecorder(Path directory, long maxFileBytes, int keepFiles, long dumpIntervalMillis) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.keepFiles = keepFiles;
+        this.dumpIntervalNanos = TimeUnit.MILLISECONDS.toNanos(dumpIntervalMillis);
+        this.writer = new Thread(this::writeLoop, "exception-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void record(Throwable t, String message) {
+        captured.incrementAndGet();
+        long key = fingerprint(t);
+        Fingerprint fingerprint = fingerprints.get(key);
+        if (fingerprint == null) {
+            if (fingerprints.size() >= MAX_FINGERPRINTS) {
+                untracked.incrementAndGet();
+                return;
+            }
+            fingerprint = fingerprints.computeIfAbsent(key, k -> new Fingerprint(t));
+        }
+        long occurrences = fingerprint.occurrences.incrementAndGet();
+        long now = System.nanoTime();
+        long lastDump = fingerprint.lastDumpNanos.get();
+        boolean due = occurrences == 1 || (lastDump != 0 && now - lastDump >= dumpIntervalNanos);
+        if (due && fingerprint.lastDumpNanos.compareAndSet(lastDump, now)) {
+            pending.incrementAndGet();
+            if (queue.offer(new Dump(fingerprint, t, message, occurrences, new Date()))) {
+                dumped.incrementAndGet();
+            } else {
+                pending.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return occurrences of the most frequent fingerprints, most frequent first
+     */
+    public Map<String, Long> getTopFingerprints(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        fingerprints.values().stream()
+                .sorted(Comparator.comparingLong((Fingerprint f) -> f.occurrences.get()).reversed())
+                .limit(limit)
+                .forEach(f -> top.put(f.description, f.occurrences.get()));
+        return top;
+    }
+
+    public String describe() {
+        return captured.get() + " captured, " + fingerprints.size() + " distinct, " + untracked.get() + " untracked, " +
+                dumped.get() + " dumped, " + dropped.get() + " dropped, top " + getTopFingerprints(3);
+    }
+
+    /**
+     * Waits for queued dumps to be written, for tests and shutdown.
+     */
+    public void drain(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (pending) {
+            while (pending.get() > 0 && System.currentTimeMillis() < deadline) {
+                pending.wait(10);
+            }
+        }
+    }
+
+    private static long fingerprint(Throwable t) {
+        long hash = t.getClass().getName().hashCode();
+        StackTraceElement[] elements = t.getStackTrace();
+        if (elements != null && elements.length > 0) {
+            hash = hash * 31 + String.valueOf(elements[0].getFileName()).hashCode();
+            hash = (hash << 16) ^ elements[0].getLineNumber();
+        }
+        return hash;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Dump dump;
+            try {
+                dump = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                write(dump);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace(System.err);
+            }
+            synchronized (pending) {
+                pending.decrementAndGet();
+                pending.notifyAll();
+            }
+        }
+    }
+
+    private void write(Dump dump) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(LOG_FILE);
+        if (Files.exists(file) && Files.size(file) >= maxFileBytes) {
+            rotate(file);
+        }
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             PrintStream ps = new PrintStream(out)) {
+            ps.print(dump.at + " | " + dump.fingerprint.id + " | occurrence " + dump.occurrences + " | ");
+            if (dump.message != null) {
+                ps.print(dump.message + " | ");
+            }
+            dump.throwable.printStackTrace(ps);
+        }
+    }
+
+    private void rotate(Path file) throws IOException {
+        for (int i = keepFiles - 1; i >= 1; i--) {
+            Path older = directory.resolve(LOG_FILE + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, directory.resolve(LOG_FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, directory.resolve(LOG_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Fingerprint {
+        private final String id;
+        private final String description;
+        private final AtomicLong occurrences = new AtomicLong();
+        private final AtomicLong lastDumpNanos = new AtomicLong();
+
+        private Fingerprint(Throwable t) {
+            this.id = String.format("%016X", fingerprint(t));
+            StackTraceElement[] elements = t.getStackTrace();
+            this.description = elements != null && elements.length > 0
+                    ? t.getClass().getName() + " at " + elements[0].getFileName() + ":" + elements[0].getLineNumber()
+                    : t.getClass().getName();
+        }
+    }
+
+    private static class Dump {
+        private final Fingerprint fingerprint;
+        private final Throwable throwable;
+        private final String message;
+        private final long occurrences;
+        private final Date at;
+
+        private Dump(Fingerprint fingerprint, Throwable throwable, String message, long occurrences, Date at) {
+            this.fingerprint = fingerprint;
+            this.throwable = throwable;
+            this.message = message;
+            this.occurrences = occurrences;
+            this.at = at;
+        }
+    }
+}
@@ -2,15 +2,19 @@ package co.kuznetsov;
 
 import org.apache.commons.lang.StringUtils;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.util.Date;
 
+/**
+ * Process-wide exception capture. Exceptions are counted by fingerprint and their stack traces written by a
+ * background thread to the directory named by the {@code exceptions.dir} system property, "exceptions" by default.
+ */
 public class Exceptions {
+    private static final long MAX_FILE_BYTES = 10 * 1024 * 1024;
+    private static final int KEEP_FILES = 5;
+    private static final long DUMP_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    private static final ExceptionRecorder RECORDER = new ExceptionRecorder(
+            Path.of(System.getProperty("exceptions.dir", "exceptions")), MAX_FILE_BYTES, KEEP_FILES, DUMP_INTERVAL_MILLIS);
 
     public static void capture(Throwable t) {
         capture(t, null);
@@ -21,48 +25,13 @@ public class Exceptions {
             System.err.println(message);
             t.printStackTrace(System.err);
         }
+        RECORDER.record(t, message);
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (PrintStream ps = new PrintStream(baos)) {
-            StackTraceElement[] elements = t.getStackTrace();
-            if (elements != null && elements.length > 0) {
-                ps.print(t.getClass() + " at " + elements[0].getFileName() + ":" + elements[0].getLineNumber());
-            }
-        } catch (Throwable tt) {
-            tt.printStackTrace(System.err);
-        }
-
-        String hash = "" + System.nanoTime();
-        try {
-            byte[] bytes = baos.toByteArray();
-
-            MessageDigest md = MessageDigest.getInstance("SHA1");
-            md.update(bytes);
-            byte[] digest = md.digest();
-
-            ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
-            try (PrintStream ps = new PrintStream(baos2)) {
-                for (int i = 0; i < 4; i++) {
-                    ps.printf("%02X", digest[i]);
-                }
-            }
-
-            hash = baos2.toString();
-        } catch (Exception e) {
-            e.printStackTrace(System.err);
-        }
-
-        String fileName = "exception-" + hash + ".txt";
-
-        if (!Files.exists(Path.of(fileName))) {
-            try (PrintStream ps = new PrintStream(new FileOutputStream(fileName))) {
-                ps.print(new Date() + " | ");
-                t.printStackTrace(ps);
-            } catch (Throwable e) {
-                e.printStackTrace(System.err);
-            }
-        } else {
-            System.err.println("Not capturing exception to a file, already exists: " + fileName);
-        }
+    /**
+     * @return capture counters and the most frequent fingerprints, for status lines
+     */
+    public static String describe() {
+        return RECORDER.describe();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package co.kuznetsov;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How canary workers and their probes are scheduled onto threads.
+ * <p>
+ * PLATFORM keeps one OS thread per running task, but reuses idle threads instead of creating new ones per probe.
+ * VIRTUAL runs every task on its own virtual thread; it requires a JDK with virtual threads (21+) at runtime and
+ * falls back to PLATFORM otherwise.
+ */
+public enum ExecutionMode {
+    PLATFORM {
+        @Override
+        public ExecutorService newExecutor(String name) {
+            return Executors.newCachedThreadPool(namedDaemonThreads(name));
+        }
+    },
+    VIRTUAL {
+        @Override
+        public ExecutorService newExecutor(String name) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads are not available in " + Runtime.version() + ", using platform threads");
+                return PLATFORM.newExecutor(name);
+            }
+        }
+    };
+
+    public abstract ExecutorService newExecutor(String name);
+
+    private static ThreadFactory namedDaemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package co.kuznetsov;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Hands every event to each of several sinks in turn. A sink that throws does not keep the event from the others.
+ */
+public class FanOutSink implements MetricsSink {
+    private final List<MetricsSink> sinks;
+
+    public FanOutSink(List<MetricsSink> sinks) {
+        this.sinks = List.copyOf(sinks);
+    }
+
+    @Override
+    public void accept(ResumeEvent event) {
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.accept(event);
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+            }
+        }
+    }
+
+    @Override
+    public void acceptFleetMetric(String metricName, long millis) {
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.acceptFleetMetric(metricName, millis);
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return sinks.stream().map(MetricsSink::describe).collect(Collectors.joining("; "));
+    }
+
+    @Override
+    public void close() {
+        for (MetricsSink sink : sinks) {
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.rds.RdsClient;
+import software.amazon.awssdk.services.rds.model.DBCluster;
+import software.amazon.awssdk.services.rds.model.DBInstance;
+import software.amazon.awssdk.services.rds.model.DescribeDbClustersRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbClustersResponse;
+import software.amazon.awssdk.services.rds.model.DescribeDbInstancesRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbInstancesResponse;
+import software.amazon.awssdk.services.rds.model.Filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the state of every canary cluster and instance with a single poller instead of one waiter per worker. A poll
+ * lists the canary's engine page by page, {@link #PAGE_SIZE} at a time, and keeps the clusters carrying the canary
+ * tag and the instances in them; RDS cannot filter these calls by tag, so that part is done here. Futures of
+ * instances waited for complete once a poll sees them available.
+ * <p>
+ * The poll interval adapts: the minimum while instances are being waited for and their states keep changing,
+ * doubling up to the maximum while nothing changes or nobody waits. Instances of running workers are watched for
+ * drift, meaning a deleted cluster or instance or a changed status or engine version, which the worker picks up with
+ * {@link #takeDrift(String)}.
+ * <p>
+ * The first poll doubles as fleet discovery on startup, see {@link #discover(long)}.
+ */
+public class FleetReadiness implements AutoCloseable {
+    public static final String AVAILABLE = "available";
+    public static final String DELETED = "deleted";
+
+    private static final int PAGE_SIZE = 100;
+
+    private final RdsClient rds;
+    private final String engine;
+    private final String tagKey;
+    private final ProvisioningScheduler provisioning;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final Map<String, CompletableFuture<DBInstance>> waiting = new ConcurrentHashMap<>();
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> drift = new ConcurrentHashMap<>();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final CountDownLatch discovered = new CountDownLatch(1);
+    private final long startNanos = System.nanoTime();
+    private final Thread poller;
+    private volatile Map<String, DBInstance> instances = Map.of();
+    private volatile Map<String, DBCluster> clusters = Map.of();
+    private long lastPollNanos;
+    private long nextPollNanos;
+    private volatile boolean running = true;
+
+    /**
+     * @param tagKey tag every canary cluster carries
+     */
+    public FleetReadiness(RdsClient rds, String engine, String tagKey, ProvisioningScheduler provisioning,
+                          long minIntervalMillis, long maxIntervalMillis) {
+        this.rds = rds;
+        this.engine = engine;
+        this.tagKey = tagKey;
+        this.provisioning = provisioning;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.maxIntervalNanos = TimeUnit.MILLISECONDS.toNanos(maxIntervalMillis);
+        this.lastPollNanos = System.nanoTime();
+        this.nextPollNanos = lastPollNanos;
+        this.poller = new Thread(this::pollLoop, "fleet-readiness");
+        this.poller.setDaemon(true);
+        this.poller.start();
+    }
+
+    /**
+     * Waits for the first poll, which loads the whole fleet, so that workers can take their cluster and instance from
+     * it instead of describing them one by one.
+     *
+     * @return false if the first poll did not finish in time, in which case workers describe their own
+     */
+    public boolean discover(long timeoutMillis) throws InterruptedException {
+        if (!discovered.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            Log.warn("fleet.discoveryTimeout", "timeoutMillis", timeoutMillis);
+            return false;
+        }
+        Log.info("fleet.discovered", "clusters", clusters.size(), "instances", instances.size(), "pages", pages.get(),
+                "millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return true;
+    }
+
+    /**
+     * @return completes with the instance once a poll sees it available
+     */
+    public CompletableFuture<DBInstance> awaitAvailable(String instanceId) {
+        DBInstance known = instances.get(instanceId);
+        if (known != null && AVAILABLE.equals(known.dbInstanceStatus())) {
+            return CompletableFuture.completedFuture(known);
+        }
+        CompletableFuture<DBInstance> future;
+        synchronized (this) {
+            future = waiting.computeIfAbsent(instanceId, k -> new CompletableFuture<>());
+            pollSoon();
+        }
+        return future;
+    }
+
+    /**
+     * Starts watching a running instance for drift.
+     */
+    public void watch(String instanceId) {
+        watched.add(instanceId);
+    }
+
+    /**
+     * @return the drift seen since the last call, {@link #DELETED} or a description of the change, or null if none
+     */
+    public String takeDrift(String instanceId) {
+        return drift.remove(instanceId);
+    }
+
+    public DBInstance getInstance(String instanceId) {
+        return instances.get(instanceId);
+    }
+
+    public DBCluster getCluster(String clusterId) {
+        return clusters.get(clusterId);
+    }
+
+    public String describe() {
+        return instances.size() + " instances in " + clusters.size() + " clusters, " + waiting.size() + " waited for, " +
+                watched.size() + " watched, " + polls.get() + " polls in " + pages.get() + " pages, next in " +
+                Math.max(0, TimeUnit.NANOSECONDS.toSeconds(nextPollNanos() - System.nanoTime())) + "s";
+    }
+
+    private synchronized long nextPollNanos() {
+        return nextPollNanos;
+    }
+
+    private synchronized void pollSoon() {
+        long soon = lastPollNanos + minIntervalNanos;
+        if (nextPollNanos - soon > 0) {
+            nextPollNanos = soon;
+            notifyAll();
+        }
+    }
+
+    private void pollLoop() {
+        long intervalNanos = minIntervalNanos;
+        while (running) {
+            synchronized (this) {
+                long now;
+                while (running && (now = System.nanoTime()) - nextPollNanos < 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, nextPollNanos - now);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                lastPollNanos = System.nanoTime();
+            }
+            boolean changed = false;
+            try {
+                changed = poll();
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+            }
+            synchronized (this) {
+                intervalNanos = waiting.isEmpty() ? maxIntervalNanos
+                        : changed ? minIntervalNanos
+                        : Math.min(maxIntervalNanos, intervalNanos * 2);
+                nextPollNanos = lastPollNanos + intervalNanos;
+            }
+        }
+    }
+
+    /**
+     * @return whether any instance waited for changed state
+     */
+    private boolean poll() {
+        Map<String, DBCluster> polledClusters = new HashMap<>();
+        String marker = null;
+        do {
+            String pageMarker = marker;
+            DescribeDbClustersResponse response = Retries.call("rds.DescribeDBClusters", RetryPolicy.DESCRIBE, () -> {
+                provisioning.acquire(ProvisioningScheduler.Action.DESCRIBE_CLUSTERS, ProvisioningScheduler.Priority.EXISTING);
+                return rds.describeDBClusters(DescribeDbClustersRequest.builder()
+                        .filters(Filter.builder().name("engine").values(engine).build())
+                        .maxRecords(PAGE_SIZE)
+                        .marker(pageMarker)
+                        .build());
+            });
+            pages.incrementAndGet();
+            for (DBCluster cluster : response.dbClusters()) {
+                if (cluster.tagList() != null && cluster.tagList().stream().anyMatch(t -> tagKey.equals(t.key()))) {
+                    polledClusters.put(cluster.dbClusterIdentifier(), cluster);
+                }
+            }
+            marker = response.marker();
+        } while (marker != null);
+
+        Map<String, DBInstance> polledInstances = new HashMap<>();
+        marker = null;
+        do {
+            String pageMarker = marker;
+            DescribeDbInstancesResponse response = Retries.call("rds.DescribeDBInstances", RetryPolicy.DESCRIBE, () -> {
+                provisioning.acquire(ProvisioningScheduler.Action.DESCRIBE_INSTANCES, ProvisioningScheduler.Priority.EXISTING);
+                return rds.describeDBInstances(DescribeDbInstancesRequest.builder()
+                        .filters(Filter.builder().name("engine").values(engine).build())
+                        .maxRecords(PAGE_SIZE)
+                        .marker(pageMarker)
+                        .build());
+            });
+            pages.incrementAndGet();
+            for (DBInstance instance : response.dbInstances()) {
+                if (polledClusters.containsKey(instance.dbClusterIdentifier())) {
+                    polledInstances.put(instance.dbInstanceIdentifier(), instance);
+                }
+            }
+            marker = response.marker();
+        } while (marker != null);
+        polls.incrementAndGet();
+
+        Map<String, DBInstance> previous = instances;
+        clusters = polledClusters;
+        instances = polledInstances;
+        discovered.countDown();
+        detectDrift(previous, polledInstances, polledClusters);
+        return completeWaiting(previous, polledInstances);
+    }
+
+    private boolean completeWaiting(Map<String, DBInstance> previous, Map<String, DBInstance> current) {
+        boolean changed = false;
+        for (Map.Entry<String, CompletableFuture<DBInstance>> entry : waiting.entrySet()) {
+            DBInstance instance = current.get(entry.getKey());
+            DBInstance before = previous.get(entry.getKey());
+            if (instance == null) {
+                continue;
+            }
+            if (before == null || !Objects.equals(before.dbInstanceStatus(), instance.dbInstanceStatus())) {
+                changed = true;
+            }
+            if (AVAILABLE.equals(instance.dbInstanceStatus())) {
+                waiting.remove(entry.getKey());
+                entry.getValue().complete(instance);
+            }
+        }
+        return changed;
+    }
+
+    private void detectDrift(Map<String, DBInstance> previous, Map<String, DBInstance> current, Map<String, DBCluster> currentClusters) {
+        for (String instanceId : watched) {
+            DBInstance instance = current.get(instanceId);
+            DBInstance before = previous.get(instanceId);
+            String change = null;
+            if (instance == null || !currentClusters.containsKey(instance.dbClusterIdentifier())) {
+                change = DELETED;
+            } else if (!AVAILABLE.equals(instance.dbInstanceStatus())) {
+                change = "status " + instance.dbInstanceStatus();
+            } else if (before != null && !Objects.equals(before.engineVersion(), instance.engineVersion())) {
+                change = "engine version " + before.engineVersion() + " to " + instance.engineVersion();
+            }
+            if (change != null) {
+                if (DELETED.equals(change)) {
+                    watched.remove(instanceId);
+                }
+                drift.put(instanceId, change);
+                Log.warn("fleet.drift", "instanceId", instanceId, "change", change);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        poller.interrupt();
+    }
+}
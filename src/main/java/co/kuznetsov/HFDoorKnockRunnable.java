@@ -1,60 +1,116 @@
 package co.kuznetsov;
 
-import com.google.common.base.Strings;
-
-import java.sql.DriverManager;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class HFDoorKnockRunnable implements Runnable {
+public class HFDoorKnockRunnable implements ProbeRunnable {
+    public static final int CONNECT_TIMEOUT_MILLIS = 500;
+    public static final int DEFAULT_CADENCE_MILLIS = 25;
+
     private final AtomicReference<ResumeOutcome> outcomeRef;
-    private final String endpoint;
-    private final int port;
-    private final String username;
-    private final String password;
-    private final String dbName;
-    private final long maxWaitMillis;
-    private final String engineDriver;
+    private final Probe probe;
+    private final Deadline deadline;
+    private final String instanceId;
+    private volatile AttemptTimings current;
+    private final long cadenceMillis;
 
     public HFDoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, String endpoint, int port, String username, String password, long maxWaitMillis) {
         this(outcomeRef, endpoint, port, "mysql", username, password, "", maxWaitMillis);
     }
 
     public HFDoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, String endpoint, int port, String engineDriver, String username, String password, String dbName, long maxWaitMillis) {
+        this(outcomeRef, new JdbcProbe(engineDriver, endpoint, port, dbName, username, password, CONNECT_TIMEOUT_MILLIS, false), maxWaitMillis);
+    }
+
+    public HFDoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, Probe probe, long maxWaitMillis) {
+        this(outcomeRef, probe, maxWaitMillis, null, DEFAULT_CADENCE_MILLIS);
+    }
+
+    /**
+     * @param instanceId instance the probe runs against, for log records only
+     * @param cadenceMillis interval attempts are started at, 0 to start each one as soon as the previous one failed
+     */
+    public HFDoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, Probe probe, long maxWaitMillis, String instanceId, long cadenceMillis) {
         this.outcomeRef = outcomeRef;
-        this.endpoint = endpoint;
-        this.port = port;
-        this.engineDriver = engineDriver;
-        this.username = username;
-        this.password = password;
-        this.dbName = dbName;
-        this.maxWaitMillis = maxWaitMillis;
+        this.probe = probe;
+        this.deadline = Deadline.after(maxWaitMillis);
+        this.instanceId = instanceId;
+        this.cadenceMillis = cadenceMillis;
     }
 
+    /**
+     * Probes on a fixed cadence. The reported duration runs from the start to the end of the successful attempt. An
+     * earlier attempt hanging until its timeout delays the successful one, so the outcome also carries how late that
+     * attempt started against its slot and the longest gap between attempt starts, which bounds how much earlier the
+     * endpoint may have become reachable; neither is subtracted from the duration.
+     */
     @Override
     public void run() {
-        Properties properties = new Properties();
-        properties.setProperty("user", username);
-        properties.setProperty("password", password);
-        properties.setProperty("connectTimeout", "500");
+        ProbeGauges.probeStarted();
+        try {
+            knockUntilDeadline();
+        } finally {
+            ProbeGauges.probeFinished();
+        }
+    }
 
-        long start = System.currentTimeMillis();
+    private void knockUntilDeadline() {
+        long start = System.nanoTime();
+        ProbeSchedule schedule = new ProbeSchedule(start, cadenceMillis);
         boolean drop = false;
+        int attempts = 0;
+        AttemptTimings attempt = null;
+        long previousStart = start;
+        long maxGapNanos = 0;
 
-        while ((System.currentTimeMillis() - start) < maxWaitMillis) {
-            try (var conn = DriverManager.getConnection("jdbc:" + engineDriver + "://" + endpoint + ":" + port + "/" + dbName, properties)) {
-                conn.createStatement().execute("SELECT 1");
-            } catch (SQLException e) {
-                System.out.println(e);
+        while (!deadline.isOver()) {
+            long intended = schedule.awaitNext();
+            if (deadline.isOver()) {
+                break;
+            }
+            attempt = new AttemptTimings(System.nanoTime());
+            current = attempt;
+            if (deadline.isCancelled()) {
+                attempt.abort();
+            }
+            attempts++;
+            maxGapNanos = Math.max(maxGapNanos, attempt.getStartNanos() - previousStart);
+            previousStart = attempt.getStartNanos();
+            try {
+                probe.knock(attempt);
+            } catch (SQLException | IOException e) {
+                Log.info("probe.failure.hf", "instanceId", instanceId, "attempt", attempts,
+                        "phase", attempt.getLastPhase(), "error", e);
                 drop = true;
                 continue;
             }
-            var durationMillis = System.currentTimeMillis() - start;
-            outcomeRef.set(new ResumeOutcome(drop, false, durationMillis, false));
+            outcomeRef.set(new ResumeOutcome(drop, false, elapsedMillis(start), false, attempts, attempt,
+                    toMillis(attempt.getStartNanos() - intended), toMillis(maxGapNanos)));
+            if (schedule.getOmitted() > 0) {
+                Log.info("probe.omitted.hf", "instanceId", instanceId, "attempts", attempts, "omittedSlots", schedule.getOmitted());
+            }
             return;
         }
-        var durationMillis = System.currentTimeMillis() - start;
-        outcomeRef.set(new ResumeOutcome(true, true, durationMillis, false));
+        boolean interrupted = deadline.isCancelled() || Thread.currentThread().isInterrupted();
+        outcomeRef.set(new ResumeOutcome(true, true, elapsedMillis(start), interrupted, attempts, attempt));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void cancel() {
+        deadline.cancel();
+        AttemptTimings attempt = current;
+        if (attempt != null) {
+            attempt.abort();
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 }
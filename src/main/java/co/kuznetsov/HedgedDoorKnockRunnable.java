@@ -0,0 +1,169 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * High-res probe that keeps several attempts in flight: a new attempt is started every {@code staggerMillis}, up to
+ * {@code maxOutstanding} at a time, so an endpoint that wakes up just after an attempt started is picked up by the
+ * next one instead of waiting for the first to time out. The first attempt to succeed wins and the others are
+ * aborted, closing their connections. The outcome carries the resolution achieved: the longest gap between attempt
+ * starts up to the winner, which bounds how long before detection the endpoint may have become reachable.
+ */
+public class HedgedDoorKnockRunnable implements ProbeRunnable {
+    private final AtomicReference<ResumeOutcome> outcomeRef;
+    private final Probe probe;
+    private final Deadline deadline;
+    private final String instanceId;
+    private final long staggerMillis;
+    private final int maxOutstanding;
+    private final ExecutorService executor;
+    private final Set<AttemptTimings> inFlightAttempts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param probe shared by all attempts, so it must not keep per-attempt state
+     * @param executor runs the attempts
+     */
+    public HedgedDoorKnockRunnable(AtomicReference<ResumeOutcome> outcomeRef, Probe probe, long maxWaitMillis, String instanceId,
+                                   long staggerMillis, int maxOutstanding, ExecutorService executor) {
+        this.outcomeRef = outcomeRef;
+        this.probe = probe;
+        this.deadline = Deadline.after(maxWaitMillis);
+        this.instanceId = instanceId;
+        this.staggerMillis = staggerMillis;
+        this.maxOutstanding = maxOutstanding;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+        ProbeGauges.probeStarted();
+        try {
+            knockUntilDeadline();
+        } finally {
+            ProbeGauges.probeFinished();
+        }
+    }
+
+    private void knockUntilDeadline() {
+        long start = System.nanoTime();
+        ProbeSchedule schedule = new ProbeSchedule(start, staggerMillis);
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        CompletableFuture<Winner> winner = new CompletableFuture<>();
+        AtomicBoolean drop = new AtomicBoolean();
+        AtomicInteger attempts = new AtomicInteger();
+        List<Future<?>> inFlight = new ArrayList<>();
+        List<Long> startNanos = new ArrayList<>();
+        AttemptTimings attempt = null;
+
+        try {
+            while (!deadline.isOver() && !winner.isDone()) {
+                long intended = schedule.awaitNext();
+                if (deadline.isOver() || winner.isDone() || !outstanding.tryAcquire(Math.max(1, staggerMillis), TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                AttemptTimings current = new AttemptTimings(System.nanoTime());
+                inFlightAttempts.add(current);
+                attempt = current;
+                startNanos.add(current.getStartNanos());
+                int number = attempts.incrementAndGet();
+                try {
+                    inFlight.add(executor.submit(() -> {
+                        try {
+                            probe.knock(current);
+                            winner.complete(new Winner(current, System.nanoTime(), current.getStartNanos() - intended, number));
+                        } catch (SQLException | IOException e) {
+                            if (!winner.isDone()) {
+                                Log.info("probe.failure.hedged", "instanceId", instanceId, "attempt", number,
+                                        "phase", current.getLastPhase(), "error", e);
+                                drop.set(true);
+                            }
+                        } finally {
+                            inFlightAttempts.remove(current);
+                            outstanding.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    outstanding.release();
+                    throw e;
+                }
+                inFlight.removeIf(Future::isDone);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.forEach(f -> f.cancel(true));
+            abortInFlight();
+        }
+
+        Winner won = winner.getNow(null);
+        if (won == null) {
+            boolean interrupted = deadline.isCancelled() || Thread.currentThread().isInterrupted();
+            outcomeRef.set(new ResumeOutcome(true, true, elapsedMillis(start), interrupted, attempts.get(), attempt));
+            return;
+        }
+        outcomeRef.set(new ResumeOutcome(drop.get(), false,
+                TimeUnit.NANOSECONDS.toMillis(won.endNanos - start), false, won.number, won.attempt,
+                toMillis(won.lagNanos), toMillis(maxGapNanos(start, startNanos, won.attempt.getStartNanos()))));
+    }
+
+    @Override
+    public void cancel() {
+        deadline.cancel();
+        abortInFlight();
+    }
+
+    private void abortInFlight() {
+        inFlightAttempts.forEach(AttemptTimings::abort);
+    }
+
+    /**
+     * @return the longest gap between consecutive attempt starts, from the start of the probe up to the given attempt
+     */
+    static long maxGapNanos(long start, List<Long> startNanos, long lastStartNanos) {
+        long previous = start;
+        long maxGap = 0;
+        for (long attemptStart : startNanos) {
+            if (attemptStart > lastStartNanos) {
+                break;
+            }
+            maxGap = Math.max(maxGap, attemptStart - previous);
+            previous = attemptStart;
+        }
+        return maxGap;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static class Winner {
+        private final AttemptTimings attempt;
+        private final long endNanos;
+        private final long lagNanos;
+        private final int number;
+
+        private Winner(AttemptTimings attempt, long endNanos, long lagNanos, int number) {
+            this.attempt = attempt;
+            this.endNanos = endNanos;
+            this.lagNanos = lagNanos;
+            this.number = number;
+        }
+    }
+}
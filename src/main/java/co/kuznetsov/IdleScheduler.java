@@ -0,0 +1,79 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the idle countdowns of all clusters of a canary. A worker hands its cluster over for the idle period and gets
+ * it back through the returned future, so no worker thread is parked while the cluster is left alone to auto-pause.
+ */
+public class IdleScheduler {
+    private final ScheduledThreadPoolExecutor timer;
+    private final Map<String, Instant> dueTimes = new ConcurrentHashMap<>();
+
+    public IdleScheduler() {
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "idle-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Idles until the detector confirms the instance paused, then for the grace period, so the resume starts as soon
+     * as there is a paused instance to resume. If no pause is confirmed within {@code maxIdleSeconds}, the cluster is
+     * handed back anyway. Both count from {@code idleSince}, which may lie in the past for a countdown recovered
+     * after a restart.
+     *
+     * @return completes with the time the pause was seen, or with null if it was not
+     */
+    public CompletableFuture<Instant> idleUntilPaused(String instanceId, Instant idleSince, PauseDetector detector,
+                                                      long graceSeconds, long maxIdleSeconds) {
+        CompletableFuture<Instant> done = new CompletableFuture<>();
+        Instant due = idleSince.plusSeconds(maxIdleSeconds);
+        dueTimes.put(instanceId, due);
+        Log.info("idle.start", "instanceId", instanceId, "idleSince", idleSince, "maxSeconds", maxIdleSeconds);
+        ScheduledFuture<?> fallback = timer.schedule(() -> {
+            detector.forget(instanceId);
+            dueTimes.remove(instanceId);
+            done.complete(null);
+        }, Math.max(0, Duration.between(Instant.now(), due).toMillis()), TimeUnit.MILLISECONDS);
+        detector.awaitPause(instanceId, idleSince).thenAccept(pausedAt -> {
+            if (!fallback.cancel(false)) {
+                return;
+            }
+            dueTimes.put(instanceId, Instant.now().plusSeconds(graceSeconds));
+            Log.info("idle.paused", "instanceId", instanceId, "pausedAt", pausedAt, "graceSeconds", graceSeconds);
+            timer.schedule(() -> {
+                dueTimes.remove(instanceId);
+                done.complete(pausedAt);
+            }, graceSeconds, TimeUnit.SECONDS);
+        });
+        return done;
+    }
+
+    public int getIdleCount() {
+        return dueTimes.size();
+    }
+
+    public Map<String, Instant> getDueTimes() {
+        return ImmutableMap.copyOf(dueTimes);
+    }
+
+    public Instant getNextDue() {
+        return dueTimes.values().stream().min(Instant::compareTo).orElse(null);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps every resume event in memory, for tests and for benchmarking the reporting path without any I/O.
+ */
+public class InMemorySink implements MetricsSink {
+    private final ConcurrentLinkedQueue<ResumeEvent> events = new ConcurrentLinkedQueue<>();
+    private final Map<String, Long> fleetMetrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void accept(ResumeEvent event) {
+        events.add(event);
+    }
+
+    @Override
+    public void acceptFleetMetric(String metricName, long millis) {
+        fleetMetrics.put(metricName, millis);
+    }
+
+    public List<ResumeEvent> getEvents() {
+        return ImmutableList.copyOf(events);
+    }
+
+    public Map<String, Long> getFleetMetrics() {
+        return ImmutableMap.copyOf(fleetMetrics);
+    }
+
+    @Override
+    public String describe() {
+        return "memory: " + events.size() + " events";
+    }
+
+    @Override
+    public void close() {
+    }
+}
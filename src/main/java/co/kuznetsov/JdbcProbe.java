@@ -0,0 +1,65 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * One JDBC connection attempt, timed phase by phase. With phase timing on, DNS resolution and the TCP handshake are
+ * done and timed separately before the driver connects to the resolved address; the driver's own connect then
+ * covers TLS and authentication, which JDBC does not let us separate.
+ */
+public class JdbcProbe implements Probe {
+    private final String engineDriver;
+    private final String endpoint;
+    private final int port;
+    private final String dbName;
+    private final Properties properties;
+    private final int connectTimeoutMillis;
+    private final boolean phaseTiming;
+
+    public JdbcProbe(String engineDriver, String endpoint, int port, String dbName, String username, String password, int connectTimeoutMillis, boolean phaseTiming) {
+        this.engineDriver = engineDriver;
+        this.endpoint = endpoint;
+        this.port = port;
+        this.dbName = dbName;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.phaseTiming = phaseTiming;
+        this.properties = new Properties();
+        this.properties.setProperty("user", username);
+        this.properties.setProperty("password", password);
+        this.properties.setProperty("connectTimeout", "" + connectTimeoutMillis);
+    }
+
+    @Override
+    public AttemptTimings knock(AttemptTimings attempt) throws SQLException, IOException {
+        String host = endpoint;
+        if (phaseTiming) {
+            InetAddress address = InetAddress.getByName(endpoint);
+            attempt.phaseDone(AttemptTimings.Phase.DNS);
+            try (Socket socket = new Socket()) {
+                attempt.track(socket);
+                socket.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+            } finally {
+                attempt.release();
+            }
+            attempt.phaseDone(AttemptTimings.Phase.TCP_CONNECT);
+            host = address instanceof Inet6Address ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+        }
+        try (var conn = DriverManager.getConnection("jdbc:" + engineDriver + "://" + host + ":" + port + "/" + dbName, properties)) {
+            attempt.track(conn);
+            attempt.phaseDone(AttemptTimings.Phase.SESSION);
+            conn.createStatement().execute("SELECT 1");
+            attempt.phaseDone(AttemptTimings.Phase.FIRST_QUERY);
+        } finally {
+            attempt.release();
+        }
+        attempt.succeeded();
+        return attempt;
+    }
+}
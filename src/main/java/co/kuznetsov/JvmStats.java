@@ -0,0 +1,51 @@
+package co.kuznetsov;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+public class JvmStats {
+    private static final long MB = 1024 * 1024;
+
+    private final int liveThreads;
+    private final int peakThreads;
+    private final long heapUsedBytes;
+
+    private JvmStats(int liveThreads, int peakThreads, long heapUsedBytes) {
+        this.liveThreads = liveThreads;
+        this.peakThreads = peakThreads;
+        this.heapUsedBytes = heapUsedBytes;
+    }
+
+    public static JvmStats snapshot() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        return new JvmStats(threads.getThreadCount(), threads.getPeakThreadCount(), memory.getHeapMemoryUsage().getUsed());
+    }
+
+    public static JvmStats snapshotAfterGc() {
+        for (int i = 0; i < 2; i++) {
+            System.gc();
+        }
+        return snapshot();
+    }
+
+    public int getLiveThreads() {
+        return liveThreads;
+    }
+
+    public int getPeakThreads() {
+        return peakThreads;
+    }
+
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + liveThreads +
+                ", peakThreads=" + peakThreads +
+                ", heapUsed=" + (heapUsedBytes / MB) + "MB";
+    }
+}
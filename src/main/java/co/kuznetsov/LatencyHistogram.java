@@ -0,0 +1,220 @@
+package co.kuznetsov;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * High dynamic range histogram with the HdrHistogram bucket layout: values are kept with a fixed number of significant
+ * decimal digits from 0 up to the highest trackable value, in a counts array that grows with the log of the range.
+ * <p>
+ * Recording is lock-free. Counts are spread over stripes picked by thread id, so workers recording at the same time
+ * rarely touch the same cache lines. {@link #intervalSnapshot()} drains the counts recorded since the previous call
+ * without stopping writers; a value recorded concurrently lands in either this interval or the next one, never both.
+ */
+public class LatencyHistogram {
+    private final Layout layout;
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final AtomicLong intervalMax = new AtomicLong();
+
+    /**
+     * @param stripes number of independent count arrays, rounded up to a power of two
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDigits, int stripes) {
+        this(new Layout(highestTrackableValue, significantDigits), stripes);
+    }
+
+    private LatencyHistogram(Layout layout, int stripes) {
+        this.layout = layout;
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new AtomicLongArray(layout.countsLength);
+        }
+        this.stripeMask = count - 1;
+    }
+
+    public void record(long value) {
+        long clamped = Math.min(Math.max(0, value), layout.highestTrackableValue);
+        stripes[(int) Thread.currentThread().getId() & stripeMask].incrementAndGet(layout.countsIndex(clamped));
+        intervalMax.accumulateAndGet(Math.max(0, value), Math::max);
+    }
+
+    /**
+     * @return everything recorded since the previous interval snapshot, which is then forgotten by this histogram
+     */
+    public Snapshot intervalSnapshot() {
+        long[] counts = new long[layout.countsLength];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < counts.length; i++) {
+                if (stripe.get(i) != 0) {
+                    counts[i] += stripe.getAndSet(i, 0);
+                }
+            }
+        }
+        return new Snapshot(layout, counts, intervalMax.getAndSet(0));
+    }
+
+    public Snapshot emptySnapshot() {
+        return new Snapshot(layout, new long[0], 0);
+    }
+
+    /**
+     * Immutable counts of a histogram over some window. Counts are trimmed to the highest non-empty bucket, so
+     * snapshots of sparse windows stay small.
+     */
+    public static class Snapshot {
+        private final Layout layout;
+        private final long[] counts;
+        private final long totalCount;
+        private final long max;
+
+        private Snapshot(Layout layout, long[] counts, long max) {
+            int length = counts.length;
+            while (length > 0 && counts[length - 1] == 0) {
+                length--;
+            }
+            long total = 0;
+            for (int i = 0; i < length; i++) {
+                total += counts[i];
+            }
+            this.layout = layout;
+            this.counts = length == counts.length ? counts : Arrays.copyOf(counts, length);
+            this.totalCount = total;
+            this.max = max;
+        }
+
+        public Snapshot merge(Snapshot other) {
+            if (layout != other.layout && !layout.equals(other.layout)) {
+                throw new IllegalArgumentException("Cannot merge histograms with different layouts");
+            }
+            long[] merged = Arrays.copyOf(counts, Math.max(counts.length, other.counts.length));
+            for (int i = 0; i < other.counts.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(layout, merged, Math.max(max, other.max));
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the highest value equivalent to the one at the given percentile, or 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= countAtPercentile) {
+                    return Math.min(layout.highestEquivalentValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        public double getMean() {
+            if (totalCount == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += counts[i] * (double) layout.medianEquivalentValue(i);
+            }
+            return sum / totalCount;
+        }
+
+        /**
+         * @return "n=... p50/p99/p99.9/max"
+         */
+        @Override
+        public String toString() {
+            return "n=" + totalCount + " " + getValueAtPercentile(50) + "/" + getValueAtPercentile(99) + "/" +
+                    getValueAtPercentile(99.9) + "/" + max;
+        }
+    }
+
+    private static class Layout {
+        private final long highestTrackableValue;
+        private final int significantDigits;
+        private final int subBucketHalfCountMagnitude;
+        private final int subBucketHalfCount;
+        private final long subBucketMask;
+        private final int leadingZeroCountBase;
+        private final int countsLength;
+
+        private Layout(long highestTrackableValue, int significantDigits) {
+            if (significantDigits < 1 || significantDigits > 5) {
+                throw new IllegalArgumentException("significantDigits must be between 1 and 5");
+            }
+            long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+            int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+            int subBucketCount = 1 << subBucketCountMagnitude;
+            this.highestTrackableValue = Math.max(highestTrackableValue, 2L * subBucketCount);
+            this.significantDigits = significantDigits;
+            this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+            this.subBucketHalfCount = subBucketCount / 2;
+            this.subBucketMask = subBucketCount - 1;
+            this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+            long smallestUntrackableValue = subBucketCount;
+            int bucketCount = 1;
+            while (smallestUntrackableValue <= this.highestTrackableValue) {
+                smallestUntrackableValue <<= 1;
+                bucketCount++;
+            }
+            this.countsLength = (bucketCount + 1) * subBucketHalfCount;
+        }
+
+        private int countsIndex(long value) {
+            int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+            int subBucketIndex = (int) (value >>> bucketIndex);
+            return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+        }
+
+        private long lowestEquivalentValue(int index) {
+            int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+            int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+            if (bucketIndex < 0) {
+                subBucketIndex -= subBucketHalfCount;
+                bucketIndex = 0;
+            }
+            return (long) subBucketIndex << bucketIndex;
+        }
+
+        private long bucketSize(int index) {
+            return 1L << Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+        }
+
+        private long highestEquivalentValue(int index) {
+            return lowestEquivalentValue(index) + bucketSize(index) - 1;
+        }
+
+        private long medianEquivalentValue(int index) {
+            return lowestEquivalentValue(index) + bucketSize(index) / 2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Layout)) {
+                return false;
+            }
+            Layout other = (Layout) o;
+            return highestTrackableValue == other.highestTrackableValue && significantDigits == other.significantDigits;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(highestTrackableValue) * 31 + significantDigits;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package co.kuznetsov;
+
+/**
+ * Process-wide {@link StructuredLogger} printing to stdout, for probe and worker loops that run on many threads at
+ * once. Key/value pairs follow the event name; pairs with a null value are left out.
+ */
+public class Log {
+    private static final int CAPACITY = 8192;
+    private static final int SAMPLES_PER_SECOND = 5;
+
+    private static final StructuredLogger LOGGER = new StructuredLogger(System.out, CAPACITY, SAMPLES_PER_SECOND);
+
+    public static void info(String event, Object... keyValues) {
+        LOGGER.info(event, keyValues);
+    }
+
+    public static void warn(String event, Object... keyValues) {
+        LOGGER.warn(event, keyValues);
+    }
+
+    public static String describe() {
+        return LOGGER.describe();
+    }
+}
@@ -0,0 +1,170 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatch.model.StatisticSet;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Folds resume events into one datum per metric, dimension rollup and window instead of one datum per resume: counts
+ * become StatisticSets, durations become Values/Counts arrays. Windows are aligned to the resume start, so a resume
+ * reported late still lands in the window it started in.
+ */
+public class MetricsAggregator {
+    /**
+     * Distinct values CloudWatch accepts in a single datum.
+     */
+    static final int MAX_VALUES_PER_DATUM = 150;
+
+    private final DimensionSets dimensionSets;
+    private final long windowMillis;
+    private Map<Key, Aggregate> aggregates = new LinkedHashMap<>();
+    private long events;
+    private long datums;
+
+    public MetricsAggregator(DimensionSets dimensionSets, Duration window) {
+        this.dimensionSets = dimensionSets;
+        this.windowMillis = window.toMillis();
+    }
+
+    public void add(ResumeEvent event) {
+        long startedAt = event.getStartedAt().toEpochMilli();
+        Instant window = Instant.ofEpochMilli(startedAt - startedAt % windowMillis);
+        List<List<Dimension>> rollups = dimensionSets.rollups(event.getDimensions());
+        synchronized (this) {
+            events++;
+            for (List<Dimension> rollup : rollups) {
+                event.getCounts().forEach((name, count) -> aggregate(window, name, rollup, StandardUnit.COUNT).add(count));
+                event.getDurations().forEach((name, millis) -> aggregate(window, name, rollup, StandardUnit.MILLISECONDS).add(millis));
+                event.getPhaseMillis().forEach((name, millis) -> aggregate(window, name, rollup, StandardUnit.MILLISECONDS).add(millis));
+            }
+        }
+    }
+
+    /**
+     * @return datums for everything added since the previous drain
+     */
+    public List<MetricDatum> drain() {
+        Map<Key, Aggregate> drained;
+        synchronized (this) {
+            drained = aggregates;
+            aggregates = new LinkedHashMap<>();
+        }
+        List<MetricDatum> result = new ArrayList<>();
+        drained.forEach((key, aggregate) -> aggregate.toDatums(key, result));
+        synchronized (this) {
+            datums += result.size();
+        }
+        return result;
+    }
+
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    public synchronized long getDatums() {
+        return datums;
+    }
+
+    private Aggregate aggregate(Instant window, String metricName, List<Dimension> dimensions, StandardUnit unit) {
+        return aggregates.computeIfAbsent(new Key(window, metricName, dimensions), k -> new Aggregate(unit));
+    }
+
+    private static class Key {
+        private final Instant window;
+        private final String metricName;
+        private final List<Dimension> dimensions;
+
+        private Key(Instant window, String metricName, List<Dimension> dimensions) {
+            this.window = window;
+            this.metricName = metricName;
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return window.equals(key.window) && metricName.equals(key.metricName) && dimensions.equals(key.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(window, metricName, dimensions);
+        }
+    }
+
+    private static class Aggregate {
+        private final StandardUnit unit;
+        private long sampleCount;
+        private double sum;
+        private double min = Double.MAX_VALUE;
+        private double max = -Double.MAX_VALUE;
+        private final Map<Double, Double> counts = new HashMap<>();
+
+        private Aggregate(StandardUnit unit) {
+            this.unit = unit;
+        }
+
+        private void add(Number number) {
+            double value = number.doubleValue();
+            sampleCount++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (unit != StandardUnit.COUNT) {
+                counts.merge(value, 1.0, Double::sum);
+            }
+        }
+
+        private void toDatums(Key key, List<MetricDatum> result) {
+            if (unit == StandardUnit.COUNT) {
+                result.add(datum(key)
+                        .statisticValues(StatisticSet.builder()
+                                .sampleCount((double) sampleCount)
+                                .sum(sum)
+                                .minimum(min)
+                                .maximum(max)
+                                .build())
+                        .build());
+                return;
+            }
+            List<Double> values = new ArrayList<>(MAX_VALUES_PER_DATUM);
+            List<Double> valueCounts = new ArrayList<>(MAX_VALUES_PER_DATUM);
+            for (Map.Entry<Double, Double> entry : counts.entrySet()) {
+                values.add(entry.getKey());
+                valueCounts.add(entry.getValue());
+                if (values.size() == MAX_VALUES_PER_DATUM) {
+                    result.add(datum(key).values(values).counts(valueCounts).build());
+                    values = new ArrayList<>(MAX_VALUES_PER_DATUM);
+                    valueCounts = new ArrayList<>(MAX_VALUES_PER_DATUM);
+                }
+            }
+            if (!values.isEmpty()) {
+                result.add(datum(key).values(values).counts(valueCounts).build());
+            }
+        }
+
+        private MetricDatum.Builder datum(Key key) {
+            MetricDatum.Builder datum = MetricDatum.builder()
+                    .metricName(key.metricName)
+                    .timestamp(key.window)
+                    .unit(unit);
+            if (!key.dimensions.isEmpty()) {
+                datum.dimensions(key.dimensions);
+            }
+            return datum;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InputLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.PutLogEventsRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects metric datums and log events from all workers of a canary and sends them to CloudWatch from a single
+ * background thread, packed into the largest batches the APIs accept. Workers only block when the queue is full,
+ * which means CloudWatch has fallen behind by more than {@link #QUEUE_CAPACITY} datums. A request that still fails
+ * after retries is captured and its datums or log events are dropped and counted, so the thread keeps draining.
+ */
+public class MetricsPublisher {
+    private static final int MAX_DATUMS_PER_REQUEST = 1000;
+    private static final int MAX_LOG_EVENTS_PER_REQUEST = 10000;
+    /**
+     * PutMetricData rejects payloads over 1MB, which aggregated datums with Values/Counts arrays reach well before
+     * {@link #MAX_DATUMS_PER_REQUEST}.
+     */
+    private static final long MAX_REQUEST_BYTES = 900 * 1024;
+    private static final int QUEUE_CAPACITY = 100000;
+    private static final long FLUSH_INTERVAL_MILLIS = 5000;
+
+    private final String namespace;
+    private final String logGroupName;
+    private final String logStreamName;
+    private final BlockingQueue<MetricDatum> datums = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<InputLogEvent> logEvents = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong droppedDatums = new AtomicLong();
+    private final AtomicLong droppedLogEvents = new AtomicLong();
+    private final Thread publisher;
+    private volatile boolean running = true;
+
+    public MetricsPublisher(String namespace, String logGroupName, String logStreamName) {
+        this.namespace = namespace;
+        this.logGroupName = logGroupName;
+        this.logStreamName = logStreamName;
+        this.publisher = new Thread(this::publishLoop, "metrics-publisher");
+        this.publisher.setDaemon(true);
+        this.publisher.start();
+    }
+
+    public void publish(Collection<MetricDatum> batch) {
+        for (MetricDatum datum : batch) {
+            enqueue(datums, datum);
+        }
+    }
+
+    public void publishLog(InputLogEvent event) {
+        enqueue(logEvents, event);
+    }
+
+    private <T> void enqueue(BlockingQueue<T> queue, T item) {
+        if (!running) {
+            throw new IllegalStateException("Metrics publisher is shut down");
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueuedDatums() {
+        return datums.size();
+    }
+
+    public long getPublishedDatums() {
+        return published.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getDroppedDatums() {
+        return droppedDatums.get();
+    }
+
+    public long getDroppedLogEvents() {
+        return droppedLogEvents.get();
+    }
+
+    /**
+     * Stops accepting new data and sends whatever is still queued.
+     */
+    public void shutdown() {
+        running = false;
+        publisher.interrupt();
+        try {
+            publisher.join(FLUSH_INTERVAL_MILLIS * 6);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publishLoop() {
+        CloudWatchClient cw = AwsClients.cloudWatch();
+        CloudWatchLogsClient cwl = AwsClients.cloudWatchLogs();
+        List<MetricDatum> batch = new ArrayList<>(MAX_DATUMS_PER_REQUEST);
+        long lastFlush = System.currentTimeMillis();
+        while (running) {
+            long waitMillis = FLUSH_INTERVAL_MILLIS - (System.currentTimeMillis() - lastFlush);
+            if (waitMillis > 0 && batch.size() < MAX_DATUMS_PER_REQUEST) {
+                try {
+                    MetricDatum next = datums.poll(waitMillis, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                        datums.drainTo(batch, MAX_DATUMS_PER_REQUEST - batch.size());
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+            flush(cw, cwl, batch);
+            lastFlush = System.currentTimeMillis();
+        }
+        flush(cw, cwl, batch);
+    }
+
+    /**
+     * Retries and throttles of AWS calls since the previous flush, per API. Retries made while publishing these show up
+     * in the next flush.
+     */
+    private void addRetryCounters(List<MetricDatum> batch) {
+        Instant now = Instant.now();
+        for (Retrier.Delta delta : Retries.drainDeltas()) {
+            Dimension api = Dimension.builder().name("Api").value(delta.getApi()).build();
+            batch.add(MetricDatum.builder().metricName("AwsRetries").dimensions(api).timestamp(now)
+                    .unit(StandardUnit.COUNT).value((double) delta.getRetries()).build());
+            batch.add(MetricDatum.builder().metricName("AwsThrottles").dimensions(api).timestamp(now)
+                    .unit(StandardUnit.COUNT).value((double) delta.getThrottles()).build());
+        }
+    }
+
+    /**
+     * Rough size of the datum in the form-encoded request body.
+     */
+    private static long estimatedBytes(MetricDatum datum) {
+        return 300 + 100L * datum.dimensions().size() + 90L * datum.values().size();
+    }
+
+    private void flush(CloudWatchClient cw, CloudWatchLogsClient cwl, List<MetricDatum> batch) {
+        addRetryCounters(batch);
+        do {
+            int from = 0;
+            while (from < batch.size()) {
+                int to = from;
+                long requestBytes = 0;
+                while (to < batch.size() && to - from < MAX_DATUMS_PER_REQUEST
+                        && (to == from || requestBytes + estimatedBytes(batch.get(to)) <= MAX_REQUEST_BYTES)) {
+                    requestBytes += estimatedBytes(batch.get(to));
+                    to++;
+                }
+                var dataRequest = PutMetricDataRequest.builder()
+                        .metricData(batch.subList(from, to))
+                        .namespace(namespace)
+                        .build();
+                try {
+                    Retries.run("cloudwatch.PutMetricData", RetryPolicy.TELEMETRY, () -> {
+                        cw.putMetricData(dataRequest);
+                    });
+                    requests.incrementAndGet();
+                    published.addAndGet(to - from);
+                } catch (RuntimeException e) {
+                    Exceptions.capture(e);
+                    Log.warn("metrics.dropped", "api", "PutMetricData", "datums", to - from, "error", e);
+                    droppedDatums.addAndGet(to - from);
+                }
+                from = to;
+            }
+            batch.clear();
+        } while (datums.drainTo(batch, MAX_DATUMS_PER_REQUEST) > 0);
+
+        List<InputLogEvent> events = new ArrayList<>();
+        while (logEvents.drainTo(events, MAX_LOG_EVENTS_PER_REQUEST) > 0) {
+            events.sort(Comparator.comparing(InputLogEvent::timestamp));
+            var logRequest = PutLogEventsRequest.builder()
+                    .logGroupName(logGroupName)
+                    .logStreamName(logStreamName)
+                    .logEvents(events)
+                    .build();
+            try {
+                Retries.run("logs.PutLogEvents", RetryPolicy.TELEMETRY, () -> {
+                    cwl.putLogEvents(logRequest);
+                });
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+                Log.warn("metrics.dropped", "api", "PutLogEvents", "logEvents", events.size(), "error", e);
+                droppedLogEvents.addAndGet(events.size());
+            }
+            events.clear();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package co.kuznetsov;
+
+/**
+ * Destination of resume events. Implementations are shared by all workers of a canary and must be thread safe;
+ * {@link #accept(ResumeEvent)} should not block for longer than it takes to hand the event over.
+ */
+public interface MetricsSink extends AutoCloseable {
+
+    void accept(ResumeEvent event);
+
+    /**
+     * Takes a duration measured once for the whole fleet of the canary, such as how long it took to bring up.
+     */
+    void acceptFleetMetric(String metricName, long millis);
+
+    /**
+     * @return a one line summary of what the sink has done so far, for the status loop
+     */
+    String describe();
+
+    /**
+     * Sends or writes whatever is still buffered and releases the sink's resources.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,86 @@
+package co.kuznetsov;
+
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options choosing where canaries report resume events. Mixed into every canary command.
+ */
+public class MetricsSinkOptions {
+    public enum Type { CLOUDWATCH, FILE, STDOUT, STATSD, MEMORY }
+
+    @CommandLine.Option(
+            names = {"-ms", "--metrics-sink"},
+            description = "Where to report resume events, comma separated: ${COMPLETION-CANDIDATES}",
+            split = ",",
+            defaultValue = "CLOUDWATCH")
+    private List<Type> types;
+
+    @CommandLine.Option(
+            names = {"-mf", "--metrics-file"},
+            description = "NDJSON file for the FILE metrics sink",
+            defaultValue = "resume-events.ndjson")
+    private Path file;
+
+    @CommandLine.Option(
+            names = {"-sh", "--statsd-host"},
+            description = "StatsD host for the STATSD metrics sink",
+            defaultValue = "localhost")
+    private String statsdHost;
+
+    @CommandLine.Option(
+            names = {"-sp", "--statsd-port"},
+            description = "StatsD port for the STATSD metrics sink",
+            defaultValue = "8125")
+    private int statsdPort;
+
+    @CommandLine.Option(
+            names = {"-dim", "--dimension-sets"},
+            description = "Dimension combinations CloudWatch metrics are rolled up by, comma separated, 'none' for no dimensions, '+' to combine",
+            split = ",",
+            defaultValue = "none,instanceId,engineVersion")
+    private List<String> dimensionSets;
+
+    @CommandLine.Option(
+            names = {"-aw", "--aggregation-window"},
+            description = "Seconds to aggregate CloudWatch metrics for before sending them, 0 to send every resume",
+            defaultValue = "60")
+    private int aggregationWindowSeconds;
+
+    public boolean uses(Type type) {
+        return types.contains(type);
+    }
+
+    /**
+     * @param logGroupName CloudWatch Logs group for resume log lines, null for none
+     */
+    public MetricsSink create(String namespace, String logGroupName, String logStreamName) throws IOException {
+        List<MetricsSink> sinks = new ArrayList<>();
+        for (Type type : types) {
+            switch (type) {
+                case CLOUDWATCH:
+                    sinks.add(new CloudWatchSink(namespace, logGroupName, logStreamName,
+                            DimensionSets.parse(dimensionSets), Duration.ofSeconds(aggregationWindowSeconds)));
+                    break;
+                case FILE:
+                    sinks.add(NdjsonSink.toFile(file));
+                    break;
+                case STDOUT:
+                    sinks.add(NdjsonSink.toStdout());
+                    break;
+                case STATSD:
+                    sinks.add(new StatsdSink(statsdHost, statsdPort, namespace));
+                    break;
+                case MEMORY:
+                    sinks.add(new InMemorySink());
+                    break;
+            }
+        }
+        return sinks.size() == 1 ? sinks.get(0) : new FanOutSink(sinks);
+    }
+}
@@ -0,0 +1,443 @@
+package co.kuznetsov;
+
+import javax.crypto.Cipher;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Probes a MySQL endpoint by speaking the client/server protocol directly: server greeting, optional TLS,
+ * mysql_native_password or caching_sha2_password authentication, COM_QUERY SELECT 1 and COM_QUIT. None of
+ * mysql-connector-j's server variable queries and session setup are involved.
+ * <p>
+ * The server greeting is timed on its own: it arrives as soon as the engine process accepts the connection, while
+ * authentication only completes once the engine can serve the account. Like the driver with sslMode=PREFERRED, TLS is
+ * used when the server offers it and the server certificate is not verified.
+ */
+public class MySqlWireProbe implements Probe {
+    private static final int CLIENT_LONG_PASSWORD = 0x00000001;
+    private static final int CLIENT_CONNECT_WITH_DB = 0x00000008;
+    private static final int CLIENT_PROTOCOL_41 = 0x00000200;
+    private static final int CLIENT_SSL = 0x00000800;
+    private static final int CLIENT_TRANSACTIONS = 0x00002000;
+    private static final int CLIENT_SECURE_CONNECTION = 0x00008000;
+    private static final int CLIENT_PLUGIN_AUTH = 0x00080000;
+    private static final int CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA = 0x00200000;
+
+    private static final int MAX_PACKET_SIZE = 16 * 1024 * 1024;
+    private static final int UTF8MB4_GENERAL_CI = 45;
+    private static final int COM_QUIT = 0x01;
+    private static final int COM_QUERY = 0x03;
+
+    static final String NATIVE_PASSWORD = "mysql_native_password";
+    static final String CACHING_SHA2_PASSWORD = "caching_sha2_password";
+    private static final byte[] SELECT_1 = "SELECT 1".getBytes(StandardCharsets.US_ASCII);
+
+    private final String endpoint;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String database;
+    private final int connectTimeoutMillis;
+    private final boolean ssl;
+
+    public MySqlWireProbe(String endpoint, int port, String username, String password, String database, int connectTimeoutMillis, boolean ssl) {
+        this.endpoint = endpoint;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.database = database;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.ssl = ssl;
+    }
+
+    @Override
+    public AttemptTimings knock(AttemptTimings attempt) throws IOException {
+        InetAddress address = InetAddress.getByName(endpoint);
+        attempt.phaseDone(AttemptTimings.Phase.DNS);
+
+        Socket socket = new Socket();
+        try {
+            attempt.track(socket);
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+            socket.setSoTimeout(connectTimeoutMillis);
+            attempt.phaseDone(AttemptTimings.Phase.TCP_CONNECT);
+
+            Session session = new Session(socket);
+            session.readGreeting();
+            attempt.phaseDone(AttemptTimings.Phase.SERVER_GREETING);
+
+            if (ssl && (session.serverCapabilities & CLIENT_SSL) != 0) {
+                session.sendSslRequest();
+                socket = Tls.handshake(socket, endpoint, port);
+                session.switchTo(socket);
+                attempt.phaseDone(AttemptTimings.Phase.TLS);
+            }
+
+            session.authenticate(socket instanceof SSLSocket);
+            attempt.phaseDone(AttemptTimings.Phase.AUTH);
+            session.query(SELECT_1);
+            attempt.phaseDone(AttemptTimings.Phase.FIRST_QUERY);
+            session.quit();
+        } finally {
+            socket.close();
+            attempt.release();
+        }
+        attempt.succeeded();
+        return attempt;
+    }
+
+    private class Session {
+        private InputStream in;
+        private OutputStream out;
+        private final byte[] header = new byte[4];
+        private byte[] packet = new byte[256];
+        private int packetLength;
+        private int sequence;
+
+        private int serverCapabilities;
+        private int clientCapabilities;
+        private String authPlugin;
+        private byte[] scramble;
+
+        private Session(Socket socket) throws IOException {
+            switchTo(socket);
+        }
+
+        private void switchTo(Socket socket) throws IOException {
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1024);
+        }
+
+        private void readGreeting() throws IOException {
+            readPacket();
+            int protocolVersion = packet[0] & 0xFF;
+            if (protocolVersion != 10) {
+                throw new ProbeProtocolException("Unsupported protocol version " + protocolVersion);
+            }
+            int i = skipCString(1);
+            i += 4; // connection id
+            byte[] seed = Arrays.copyOfRange(packet, i, i + 8);
+            i += 8 + 1;
+            serverCapabilities = readInt2(i);
+            i += 2;
+            if (i >= packetLength) {
+                throw new ProbeProtocolException("Server greeting without 4.1 capabilities");
+            }
+            i += 1 + 2; // character set, status flags
+            serverCapabilities |= readInt2(i) << 16;
+            i += 2;
+            int seedLength = packet[i] & 0xFF;
+            i += 1 + 10;
+            if ((serverCapabilities & CLIENT_PROTOCOL_41) == 0 || (serverCapabilities & CLIENT_SECURE_CONNECTION) == 0) {
+                throw new ProbeProtocolException("Server does not support 4.1 authentication");
+            }
+            int restLength = Math.max(13, seedLength - 8) - 1;
+            scramble = new byte[8 + restLength];
+            System.arraycopy(seed, 0, scramble, 0, 8);
+            System.arraycopy(packet, i, scramble, 8, restLength);
+            i += restLength + 1;
+            authPlugin = (serverCapabilities & CLIENT_PLUGIN_AUTH) != 0 && i < packetLength
+                    ? readCString(i)
+                    : NATIVE_PASSWORD;
+
+            clientCapabilities = CLIENT_LONG_PASSWORD | CLIENT_PROTOCOL_41 | CLIENT_TRANSACTIONS | CLIENT_SECURE_CONNECTION
+                    | (serverCapabilities & (CLIENT_PLUGIN_AUTH | CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA));
+            if (database != null && !database.isEmpty()) {
+                clientCapabilities |= CLIENT_CONNECT_WITH_DB;
+            }
+        }
+
+        private void sendSslRequest() throws IOException {
+            clientCapabilities |= CLIENT_SSL;
+            byte[] request = new byte[32];
+            writeInt4(request, 0, clientCapabilities);
+            writeInt4(request, 4, MAX_PACKET_SIZE);
+            request[8] = UTF8MB4_GENERAL_CI;
+            send(request, request.length);
+        }
+
+        private void authenticate(boolean secure) throws IOException {
+            try {
+                sendHandshakeResponse(authResponse(authPlugin, scramble));
+                while (true) {
+                    readPacket();
+                    switch (packet[0] & 0xFF) {
+                        case 0x00:
+                            return;
+                        case 0xFE: {
+                            authPlugin = readCString(1);
+                            int seedStart = skipCString(1);
+                            int seedEnd = packetLength > seedStart && packet[packetLength - 1] == 0 ? packetLength - 1 : packetLength;
+                            scramble = Arrays.copyOfRange(packet, seedStart, seedEnd);
+                            byte[] response = authResponse(authPlugin, scramble);
+                            send(response, response.length);
+                            break;
+                        }
+                        case 0x01:
+                            if (!CACHING_SHA2_PASSWORD.equals(authPlugin)) {
+                                throw new ProbeProtocolException("Unexpected auth data for " + authPlugin);
+                            }
+                            continueCachingSha2(secure);
+                            break;
+                        default:
+                            throw unexpected();
+                    }
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Handles AuthMoreData of caching_sha2_password: either fast auth succeeded, or the server wants the password
+         * itself, in clear text over TLS or RSA encrypted with its public key otherwise.
+         */
+        private void continueCachingSha2(boolean secure) throws IOException, GeneralSecurityException {
+            if (packetLength == 2 && packet[1] == 3) {
+                return;
+            }
+            byte[] clearPassword = cstring(password);
+            if (packetLength == 2 && packet[1] == 4) {
+                if (secure) {
+                    send(clearPassword, clearPassword.length);
+                } else {
+                    send(new byte[]{2}, 1);
+                }
+                return;
+            }
+            // The server public key in reply to our request above
+            String pem = new String(packet, 1, packetLength - 1, StandardCharsets.US_ASCII);
+            byte[] plain = clearPassword;
+            for (int i = 0; i < plain.length; i++) {
+                plain[i] ^= scramble[i % scramble.length];
+            }
+            Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-1AndMGF1Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey(pem));
+            byte[] encrypted = cipher.doFinal(plain);
+            send(encrypted, encrypted.length);
+        }
+
+        private void sendHandshakeResponse(byte[] authResponse) throws IOException {
+            byte[] user = username.getBytes(StandardCharsets.UTF_8);
+            byte[] db = (clientCapabilities & CLIENT_CONNECT_WITH_DB) != 0 ? database.getBytes(StandardCharsets.UTF_8) : null;
+            byte[] plugin = authPlugin.getBytes(StandardCharsets.US_ASCII);
+
+            byte[] response = new byte[32 + user.length + 1 + 9 + authResponse.length
+                    + (db == null ? 0 : db.length + 1) + plugin.length + 1];
+            writeInt4(response, 0, clientCapabilities);
+            writeInt4(response, 4, MAX_PACKET_SIZE);
+            response[8] = UTF8MB4_GENERAL_CI;
+            int i = 32;
+            System.arraycopy(user, 0, response, i, user.length);
+            i += user.length + 1;
+            if ((clientCapabilities & CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA) != 0) {
+                i = writeLengthEncoded(response, i, authResponse.length);
+            } else {
+                response[i++] = (byte) authResponse.length;
+            }
+            System.arraycopy(authResponse, 0, response, i, authResponse.length);
+            i += authResponse.length;
+            if (db != null) {
+                System.arraycopy(db, 0, response, i, db.length);
+                i += db.length + 1;
+            }
+            if ((clientCapabilities & CLIENT_PLUGIN_AUTH) != 0) {
+                System.arraycopy(plugin, 0, response, i, plugin.length);
+                i += plugin.length + 1;
+            }
+            send(response, i);
+        }
+
+        private void query(byte[] sql) throws IOException {
+            sendCommand(COM_QUERY, sql);
+            readPacket();
+            int first = packet[0] & 0xFF;
+            if (first == 0x00) {
+                return;
+            }
+            // Column definitions and rows are each terminated by an EOF packet
+            int eofs = 0;
+            while (eofs < 2) {
+                readPacket();
+                if ((packet[0] & 0xFF) == 0xFE && packetLength < 9) {
+                    eofs++;
+                }
+            }
+        }
+
+        private void quit() throws IOException {
+            sendCommand(COM_QUIT, new byte[0]);
+        }
+
+        private void sendCommand(int command, byte[] argument) throws IOException {
+            sequence = 0;
+            byte[] payload = new byte[1 + argument.length];
+            payload[0] = (byte) command;
+            System.arraycopy(argument, 0, payload, 1, argument.length);
+            send(payload, payload.length);
+        }
+
+        private void readPacket() throws IOException {
+            readFully(header, 4);
+            packetLength = (header[0] & 0xFF) | ((header[1] & 0xFF) << 8) | ((header[2] & 0xFF) << 16);
+            sequence = ((header[3] & 0xFF) + 1) & 0xFF;
+            if (packetLength > packet.length) {
+                packet = new byte[packetLength];
+            }
+            readFully(packet, packetLength);
+            if (packetLength == 0) {
+                throw new ProbeProtocolException("Empty packet");
+            }
+            if ((packet[0] & 0xFF) == 0xFF) {
+                throw new ProbeProtocolException("Server error: " + readError());
+            }
+        }
+
+        private void readFully(byte[] buffer, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                int n = in.read(buffer, read, length - read);
+                if (n < 0) {
+                    throw new ProbeProtocolException("Connection closed by the server");
+                }
+                read += n;
+            }
+        }
+
+        private void send(byte[] payload, int length) throws IOException {
+            out.write(length & 0xFF);
+            out.write((length >> 8) & 0xFF);
+            out.write((length >> 16) & 0xFF);
+            out.write(sequence);
+            out.write(payload, 0, length);
+            out.flush();
+            sequence = (sequence + 1) & 0xFF;
+        }
+
+        /**
+         * @return error code, SQLSTATE and message of an ERR packet
+         */
+        private String readError() {
+            int code = readInt2(1);
+            int i = 3;
+            String sqlState = null;
+            if (packetLength > 9 && packet[i] == '#') {
+                sqlState = new String(packet, i + 1, 5, StandardCharsets.US_ASCII);
+                i += 6;
+            }
+            return "[" + code + (sqlState == null ? "" : "/" + sqlState) + "] "
+                    + new String(packet, i, packetLength - i, StandardCharsets.UTF_8);
+        }
+
+        private int readInt2(int offset) {
+            return (packet[offset] & 0xFF) | ((packet[offset + 1] & 0xFF) << 8);
+        }
+
+        private int skipCString(int offset) {
+            int i = offset;
+            while (i < packetLength && packet[i] != 0) {
+                i++;
+            }
+            return i + 1;
+        }
+
+        private String readCString(int offset) {
+            return new String(packet, offset, skipCString(offset) - offset - 1, StandardCharsets.UTF_8);
+        }
+
+        private ProbeProtocolException unexpected() {
+            return new ProbeProtocolException("Unexpected packet: " + (packet[0] & 0xFF));
+        }
+    }
+
+    private byte[] authResponse(String plugin, byte[] seed) throws GeneralSecurityException, ProbeProtocolException {
+        if (password.isEmpty()) {
+            return new byte[0];
+        }
+        if (NATIVE_PASSWORD.equals(plugin)) {
+            return nativePasswordScramble(password, seed);
+        }
+        if (CACHING_SHA2_PASSWORD.equals(plugin)) {
+            return cachingSha2Scramble(password, seed);
+        }
+        throw new ProbeProtocolException("Unsupported authentication plugin: " + plugin);
+    }
+
+    /**
+     * SHA1(password) XOR SHA1(seed + SHA1(SHA1(password)))
+     */
+    static byte[] nativePasswordScramble(String password, byte[] seed) throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        byte[] stage1 = sha1.digest(password.getBytes(StandardCharsets.UTF_8));
+        byte[] stage2 = sha1.digest(stage1);
+        sha1.update(Arrays.copyOf(seed, 20));
+        sha1.update(stage2);
+        return xor(stage1, sha1.digest());
+    }
+
+    /**
+     * SHA256(password) XOR SHA256(SHA256(SHA256(password)) + seed)
+     */
+    static byte[] cachingSha2Scramble(String password, byte[] seed) throws GeneralSecurityException {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] stage1 = sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        byte[] stage2 = sha256.digest(stage1);
+        sha256.update(sha256.digest(stage2));
+        sha256.update(Arrays.copyOf(seed, 20));
+        return xor(stage1, sha256.digest());
+    }
+
+    static PublicKey publicKey(String pem) throws GeneralSecurityException {
+        String base64 = pem.replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s", "");
+        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64)));
+    }
+
+    private static byte[] xor(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) (a[i] ^ b[i]);
+        }
+        return result;
+    }
+
+    private static byte[] cstring(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, bytes.length + 1);
+    }
+
+    private static void writeInt4(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static int writeLengthEncoded(byte[] buffer, int offset, int value) {
+        if (value < 251) {
+            buffer[offset] = (byte) value;
+            return offset + 1;
+        }
+        buffer[offset] = (byte) 0xFC;
+        buffer[offset + 1] = (byte) value;
+        buffer[offset + 2] = (byte) (value >> 8);
+        return offset + 3;
+    }
+}
@@ -0,0 +1,137 @@
+package co.kuznetsov;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Writes one JSON object per resume event or fleet metric and line to a file or to stdout. Each line is put in a direct buffer and
+ * written with a single channel write as soon as the event is accepted; resume events are a few a minute at most, so
+ * nothing is held back waiting for more.
+ */
+public class NdjsonSink implements MetricsSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final String target;
+    private final boolean ownsChannel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long lines;
+    private long bytesWritten;
+
+    /**
+     * @param ownsChannel whether closing the sink closes the channel; stdout is only flushed
+     */
+    public NdjsonSink(WritableByteChannel channel, String target, boolean ownsChannel) {
+        this.channel = channel;
+        this.target = target;
+        this.ownsChannel = ownsChannel;
+    }
+
+    public static NdjsonSink toFile(Path path) throws IOException {
+        return new NdjsonSink(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), path.toString(), true);
+    }
+
+    public static NdjsonSink toStdout() {
+        return new NdjsonSink(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), "stdout", false);
+    }
+
+    @Override
+    public void accept(ResumeEvent event) {
+        writeLine(toJson(event));
+    }
+
+    @Override
+    public void acceptFleetMetric(String metricName, long millis) {
+        StringBuilder sb = new StringBuilder(64).append("{\"at\":\"").append(Instant.now()).append("\",");
+        string(sb, metricName).append(':').append(millis);
+        writeLine(sb.append("}\n").toString());
+    }
+
+    private synchronized void writeLine(String json) {
+        byte[] line = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (line.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(line));
+            } else {
+                buffer.put(line);
+                flush();
+            }
+            lines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized String describe() {
+        return "NDJSON " + target + ": " + lines + " lines, " + bytesWritten + " bytes written";
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+            if (ownsChannel) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            Exceptions.capture(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+    }
+
+    static String toJson(ResumeEvent event) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"startedAt\":\"").append(event.getStartedAt()).append('"');
+        sb.append(",\"dimensions\":{");
+        String separator = "";
+        for (Map.Entry<String, String> dimension : event.getDimensions().entrySet()) {
+            sb.append(separator);
+            string(sb, dimension.getKey()).append(':');
+            string(sb, dimension.getValue());
+            separator = ",";
+        }
+        sb.append('}');
+        event.getCounts().forEach((name, count) -> string(sb.append(','), name).append(':').append(count));
+        event.getDurations().forEach((name, millis) -> string(sb.append(','), name).append(':').append(millis));
+        event.getPhaseMillis().forEach((name, millis) -> string(sb.append(','), name).append(':').append(millis));
+        return sb.append("}\n").toString();
+    }
+
+    private static StringBuilder string(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+}
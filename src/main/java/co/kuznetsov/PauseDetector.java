@@ -0,0 +1,201 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.ScanBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells when idle instances have auto-paused. An auto-paused Aurora Serverless v2 instance stays "available" in the RDS
+ * API, so the signal is its ServerlessDatabaseCapacity metric dropping to 0 ACU. One GetMetricData call covers up to
+ * {@link #QUERIES_PER_REQUEST} instances. Polls are due once the first waiting instance may have paused, that is
+ * {@code expectedPauseSeconds} after it went idle, and repeat every {@code minIntervalMillis} from then on.
+ * <p>
+ * The metric has one-minute resolution: the capacity reached 0 at some point in the first minute whose Minimum is 0.
+ * The pause time reported is the middle of that minute, within 30 seconds either way of the actual pause.
+ */
+public class PauseDetector implements AutoCloseable {
+    private static final int QUERIES_PER_REQUEST = 500;
+    private static final int PERIOD_SECONDS = 60;
+
+    private final CloudWatchClient cw;
+    private final long expectedPauseSeconds;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final Map<String, Waiter> waiting = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+
+    public PauseDetector(CloudWatchClient cw, long expectedPauseSeconds, long minIntervalMillis, long maxIntervalMillis) {
+        this.cw = cw;
+        this.expectedPauseSeconds = expectedPauseSeconds;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "pause-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.schedule(this::pollAndReschedule, minIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param idleSince when the workload on the instance stopped
+     * @return completes with the time the instance was seen paused
+     */
+    public CompletableFuture<Instant> awaitPause(String instanceId, Instant idleSince) {
+        Waiter waiter = new Waiter(idleSince);
+        waiting.put(instanceId, waiter);
+        return waiter.paused;
+    }
+
+    /**
+     * Stops waiting for the instance, for when the resume goes ahead without a confirmed pause.
+     */
+    public void forget(String instanceId) {
+        waiting.remove(instanceId);
+    }
+
+    public String describe() {
+        return waiting.size() + " waiting, " + confirmed.get() + " pauses confirmed, " + polls.get() + " polls in " +
+                requests.get() + " requests";
+    }
+
+    private void pollAndReschedule() {
+        try {
+            if (!waiting.isEmpty() && Instant.now().isAfter(earliestDue())) {
+                poll();
+            }
+        } catch (RuntimeException e) {
+            Exceptions.capture(e);
+        }
+        long delay = maxIntervalMillis;
+        if (!waiting.isEmpty()) {
+            long untilDue = Duration.between(Instant.now(), earliestDue()).toMillis();
+            delay = Math.min(maxIntervalMillis, Math.max(minIntervalMillis, untilDue));
+        }
+        if (!timer.isShutdown()) {
+            timer.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Instant earliestDue() {
+        return waiting.values().stream()
+                .map(w -> w.idleSince.plusSeconds(expectedPauseSeconds))
+                .min(Instant::compareTo)
+                .orElse(Instant.MAX);
+    }
+
+    private void poll() {
+        polls.incrementAndGet();
+        Instant now = Instant.now();
+        List<Map.Entry<String, Waiter>> due = new ArrayList<>();
+        waiting.entrySet().stream()
+                .filter(e -> !e.getValue().idleSince.plusSeconds(expectedPauseSeconds).isAfter(now))
+                .forEach(due::add);
+        for (int from = 0; from < due.size(); from += QUERIES_PER_REQUEST) {
+            pollBatch(due.subList(from, Math.min(due.size(), from + QUERIES_PER_REQUEST)), now);
+        }
+    }
+
+    private void pollBatch(List<Map.Entry<String, Waiter>> batch, Instant now) {
+        Map<String, Map.Entry<String, Waiter>> byQueryId = new HashMap<>();
+        List<MetricDataQuery> queries = new ArrayList<>();
+        Instant start = now;
+        for (Map.Entry<String, Waiter> entry : batch) {
+            String queryId = "q" + byQueryId.size();
+            byQueryId.put(queryId, entry);
+            start = start.isBefore(entry.getValue().idleSince) ? start : entry.getValue().idleSince;
+            queries.add(MetricDataQuery.builder()
+                    .id(queryId)
+                    .metricStat(MetricStat.builder()
+                            .metric(Metric.builder()
+                                    .namespace("AWS/RDS")
+                                    .metricName("ServerlessDatabaseCapacity")
+                                    .dimensions(Dimension.builder().name("DBInstanceIdentifier").value(entry.getKey()).build())
+                                    .build())
+                            .period(PERIOD_SECONDS)
+                            .stat("Minimum")
+                            .build())
+                    .build());
+        }
+        Instant from = start.truncatedTo(ChronoUnit.MINUTES);
+        String nextToken = null;
+        do {
+            String token = nextToken;
+            GetMetricDataResponse response = Retries.call("cloudwatch.GetMetricData", RetryPolicy.DESCRIBE, () ->
+                    cw.getMetricData(GetMetricDataRequest.builder()
+                            .metricDataQueries(queries)
+                            .startTime(from)
+                            .endTime(now)
+                            .scanBy(ScanBy.TIMESTAMP_ASCENDING)
+                            .nextToken(token)
+                            .build()));
+            requests.incrementAndGet();
+            for (MetricDataResult result : response.metricDataResults()) {
+                Map.Entry<String, Waiter> entry = byQueryId.get(result.id());
+                if (entry == null) {
+                    continue;
+                }
+                Instant pausedAt = firstPause(result.timestamps(), result.values(), entry.getValue().idleSince);
+                if (pausedAt != null && waiting.remove(entry.getKey(), entry.getValue())) {
+                    confirmed.incrementAndGet();
+                    entry.getValue().paused.complete(pausedAt);
+                }
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+    }
+
+    /**
+     * The minute the instance went idle in is not considered: its Minimum is usually 0 from the pause the previous
+     * resume ended seconds before, not from a new one.
+     *
+     * @return middle of the earliest period at 0 ACU that began no earlier than {@code idleSince}, accurate to half a
+     * period, or null if there is none
+     */
+    static Instant firstPause(List<Instant> timestamps, List<Double> values, Instant idleSince) {
+        Instant first = null;
+        for (int i = 0; i < timestamps.size() && i < values.size(); i++) {
+            Instant timestamp = timestamps.get(i);
+            if (values.get(i) == 0 && !timestamp.isBefore(idleSince) && (first == null || timestamp.isBefore(first))) {
+                first = timestamp;
+            }
+        }
+        return first == null ? null : first.plusSeconds(PERIOD_SECONDS / 2);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private static class Waiter {
+        private final Instant idleSince;
+        private final CompletableFuture<Instant> paused = new CompletableFuture<>();
+
+        private Waiter(Instant idleSince) {
+            this.idleSince = idleSince;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package co.kuznetsov;
+
+import picocli.CommandLine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Knocks on the same PostgreSQL endpoint with the pgjdbc probe used by {@link DoorKnockRunnable} and with
+ * {@link PgWireProbe}, alternating which one goes first, and prints per-phase latencies of both to show how much of a
+ * measured attempt is driver overhead.
+ */
+@CommandLine.Command(name = "compare-pg-probes", mixinStandardHelpOptions = true,
+        description = "Compare pgjdbc and native PostgreSQL probe latencies")
+public class PgProbeComparison implements Callable<Integer> {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    @CommandLine.Option(
+            names = {"-e", "--endpoint"},
+            description = "Endpoint",
+            required = true)
+    private String endpoint;
+
+    @CommandLine.Option(
+            names = {"-p", "--port"},
+            description = "Endpoint",
+            defaultValue = "5432")
+    private int port;
+
+    @CommandLine.Option(
+            names = {"-u", "--user"},
+            description = "Database username",
+            required = true)
+    private String username;
+
+    @CommandLine.Option(
+            names = {"-pw", "--password"},
+            description = "Database username",
+            required = true)
+    private String password;
+
+    @CommandLine.Option(
+            names = {"-db", "--database"},
+            description = "Database name",
+            defaultValue = "jff")
+    private String database;
+
+    @CommandLine.Option(
+            names = {"-n", "--iterations"},
+            description = "Attempts per probe",
+            defaultValue = "50")
+    private int iterations;
+
+    public static void main(String... args) {
+        int exitCode = new CommandLine(new PgProbeComparison()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        Probe jdbc = new JdbcProbe("postgresql", endpoint, port, database, username, password, CONNECT_TIMEOUT_MILLIS, true);
+        Probe nativeProbe = new PgWireProbe(endpoint, port, username, password, database, CONNECT_TIMEOUT_MILLIS, true);
+
+        // Warm up class loading and the JIT for both before measuring
+        jdbc.knock(new AttemptTimings(System.nanoTime()));
+        nativeProbe.knock(new AttemptTimings(System.nanoTime()));
+
+        List<AttemptTimings> jdbcAttempts = new ArrayList<>();
+        List<AttemptTimings> nativeAttempts = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            if (i % 2 == 0) {
+                jdbcAttempts.add(jdbc.knock(new AttemptTimings(System.nanoTime())));
+                nativeAttempts.add(nativeProbe.knock(new AttemptTimings(System.nanoTime())));
+            } else {
+                nativeAttempts.add(nativeProbe.knock(new AttemptTimings(System.nanoTime())));
+                jdbcAttempts.add(jdbc.knock(new AttemptTimings(System.nanoTime())));
+            }
+        }
+
+        System.out.println("Median / p90 milliseconds over " + iterations + " attempts:");
+        System.out.printf("%-20s %20s %20s%n", "phase", "pgjdbc", "native");
+        Map<AttemptTimings.Phase, List<Long>> jdbcPhases = byPhase(jdbcAttempts);
+        Map<AttemptTimings.Phase, List<Long>> nativePhases = byPhase(nativeAttempts);
+        for (AttemptTimings.Phase phase : AttemptTimings.Phase.values()) {
+            System.out.printf("%-20s %20s %20s%n", phase.getMetricName(),
+                    summary(jdbcPhases.get(phase)), summary(nativePhases.get(phase)));
+        }
+        List<Long> jdbcTotals = totals(jdbcAttempts);
+        List<Long> nativeTotals = totals(nativeAttempts);
+        System.out.printf("%-20s %20s %20s%n", "total", summary(jdbcTotals), summary(nativeTotals));
+        System.out.printf("Driver overhead (median): %.3f ms%n",
+                toMillis(percentile(jdbcTotals, 50) - percentile(nativeTotals, 50)));
+        return 0;
+    }
+
+    private static Map<AttemptTimings.Phase, List<Long>> byPhase(List<AttemptTimings> attempts) {
+        Map<AttemptTimings.Phase, List<Long>> phases = new EnumMap<>(AttemptTimings.Phase.class);
+        for (AttemptTimings attempt : attempts) {
+            for (AttemptTimings.Phase phase : AttemptTimings.Phase.values()) {
+                long nanos = attempt.getPhaseNanos(phase);
+                if (nanos >= 0) {
+                    phases.computeIfAbsent(phase, p -> new ArrayList<>()).add(nanos);
+                }
+            }
+        }
+        return phases;
+    }
+
+    private static List<Long> totals(List<AttemptTimings> attempts) {
+        List<Long> totals = new ArrayList<>();
+        for (AttemptTimings attempt : attempts) {
+            totals.add(attempt.getTotalNanos());
+        }
+        return totals;
+    }
+
+    private static String summary(List<Long> nanos) {
+        if (nanos == null || nanos.isEmpty()) {
+            return "-";
+        }
+        return String.format("%.3f / %.3f", toMillis(percentile(nanos, 50)), toMillis(percentile(nanos, 90)));
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,356 @@
+package co.kuznetsov;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Probes a PostgreSQL endpoint by speaking the v3 frontend/backend protocol directly: optional SSLRequest, startup,
+ * cleartext/MD5/SCRAM-SHA-256 authentication, a simple query SELECT 1 and Terminate. Each step is timed on its own
+ * and none of pgjdbc's connection setup is involved.
+ * <p>
+ * Like pgjdbc with sslmode=prefer, TLS is used when the server offers it and the server certificate is not verified.
+ */
+public class PgWireProbe implements Probe {
+    private static final int PROTOCOL_VERSION = 196608;
+    private static final int SSL_REQUEST_CODE = 80877103;
+    private static final byte[] SELECT_1 = "SELECT 1\0".getBytes(StandardCharsets.US_ASCII);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String endpoint;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String database;
+    private final int connectTimeoutMillis;
+    private final boolean ssl;
+
+    public PgWireProbe(String endpoint, int port, String username, String password, String database, int connectTimeoutMillis, boolean ssl) {
+        this.endpoint = endpoint;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.database = database;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.ssl = ssl;
+    }
+
+    @Override
+    public AttemptTimings knock(AttemptTimings attempt) throws IOException {
+        InetAddress address = InetAddress.getByName(endpoint);
+        attempt.phaseDone(AttemptTimings.Phase.DNS);
+
+        Socket socket = new Socket();
+        try {
+            attempt.track(socket);
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+            socket.setSoTimeout(connectTimeoutMillis);
+            attempt.phaseDone(AttemptTimings.Phase.TCP_CONNECT);
+
+            if (ssl) {
+                socket = negotiateTls(socket);
+                if (socket instanceof SSLSocket) {
+                    attempt.phaseDone(AttemptTimings.Phase.TLS);
+                }
+            }
+
+            Session session = new Session(socket);
+            session.sendStartup();
+            session.authenticate();
+            attempt.phaseDone(AttemptTimings.Phase.AUTH);
+            session.awaitReadyForQuery();
+            attempt.phaseDone(AttemptTimings.Phase.SESSION);
+            session.query(SELECT_1);
+            attempt.phaseDone(AttemptTimings.Phase.FIRST_QUERY);
+            session.terminate();
+        } finally {
+            socket.close();
+            attempt.release();
+        }
+        attempt.succeeded();
+        return attempt;
+    }
+
+    private Socket negotiateTls(Socket socket) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(8);
+        out.writeInt(SSL_REQUEST_CODE);
+        out.flush();
+        int answer = socket.getInputStream().read();
+        if (answer == 'N') {
+            return socket;
+        }
+        if (answer != 'S') {
+            throw new ProbeProtocolException("Unexpected answer to SSLRequest: " + answer);
+        }
+        return Tls.handshake(socket, endpoint, port);
+    }
+
+    private class Session {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private byte[] body = new byte[256];
+        private int bodyLength;
+
+        private Session(Socket socket) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1024));
+        }
+
+        private void sendStartup() throws IOException {
+            byte[] parameters = ("user\0" + username + "\0database\0" + database + "\0application_name\0resume-probe\0\0")
+                    .getBytes(StandardCharsets.UTF_8);
+            out.writeInt(8 + parameters.length);
+            out.writeInt(PROTOCOL_VERSION);
+            out.write(parameters);
+            out.flush();
+        }
+
+        private void authenticate() throws IOException {
+            String clientFirstBare = null;
+            byte[] expectedServerSignature = null;
+            while (true) {
+                char type = readMessage();
+                if (type == 'N') {
+                    continue;
+                }
+                if (type != 'R') {
+                    throw unexpected(type);
+                }
+                int code = readInt(0);
+                try {
+                    switch (code) {
+                        case 0:
+                            return;
+                        case 3:
+                            send('p', cstring(password));
+                            break;
+                        case 5:
+                            send('p', cstring(md5Password(Arrays.copyOfRange(body, 4, 8))));
+                            break;
+                        case 10:
+                            if (!readCStrings(4).contains(Scram.MECHANISM)) {
+                                throw new ProbeProtocolException("Server does not offer " + Scram.MECHANISM);
+                            }
+                            clientFirstBare = "n=,r=" + nonce();
+                            sendSaslInitialResponse("n,," + clientFirstBare);
+                            break;
+                        case 11:
+                            String serverFirst = new String(body, 4, bodyLength - 4, StandardCharsets.UTF_8);
+                            expectedServerSignature = sendScramClientFinal(clientFirstBare, serverFirst);
+                            break;
+                        case 12:
+                            String serverFinal = new String(body, 4, bodyLength - 4, StandardCharsets.UTF_8);
+                            byte[] serverSignature = Base64.getDecoder().decode(attribute(serverFinal, 'v'));
+                            if (expectedServerSignature == null || !MessageDigest.isEqual(expectedServerSignature, serverSignature)) {
+                                throw new ProbeProtocolException("SCRAM server signature does not match");
+                            }
+                            break;
+                        default:
+                            throw new ProbeProtocolException("Unsupported authentication request: " + code);
+                    }
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        private void awaitReadyForQuery() throws IOException {
+            while (true) {
+                char type = readMessage();
+                switch (type) {
+                    case 'Z':
+                        return;
+                    case 'S':
+                    case 'K':
+                    case 'N':
+                        break;
+                    default:
+                        throw unexpected(type);
+                }
+            }
+        }
+
+        private void query(byte[] sql) throws IOException {
+            send('Q', sql);
+            while (true) {
+                char type = readMessage();
+                switch (type) {
+                    case 'Z':
+                        return;
+                    case 'T':
+                    case 'D':
+                    case 'C':
+                    case 'N':
+                    case 'S':
+                        break;
+                    default:
+                        throw unexpected(type);
+                }
+            }
+        }
+
+        private void terminate() throws IOException {
+            out.writeByte('X');
+            out.writeInt(4);
+            out.flush();
+        }
+
+        private String md5Password(byte[] salt) throws GeneralSecurityException {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(password.getBytes(StandardCharsets.UTF_8));
+            md5.update(username.getBytes(StandardCharsets.UTF_8));
+            byte[] inner = hex(md5.digest()).getBytes(StandardCharsets.US_ASCII);
+            md5.update(inner);
+            md5.update(salt);
+            return "md5" + hex(md5.digest());
+        }
+
+        private void sendSaslInitialResponse(String clientFirst) throws IOException {
+            byte[] mechanism = cstring(Scram.MECHANISM);
+            byte[] response = clientFirst.getBytes(StandardCharsets.UTF_8);
+            out.writeByte('p');
+            out.writeInt(4 + mechanism.length + 4 + response.length);
+            out.write(mechanism);
+            out.writeInt(response.length);
+            out.write(response);
+            out.flush();
+        }
+
+        /**
+         * @return the server signature the server has to present in its final message
+         */
+        private byte[] sendScramClientFinal(String clientFirstBare, String serverFirst) throws IOException, GeneralSecurityException {
+            String serverNonce = attribute(serverFirst, 'r');
+            if (clientFirstBare == null || !serverNonce.startsWith(attribute(clientFirstBare, 'r'))) {
+                throw new ProbeProtocolException("SCRAM server nonce does not extend the client nonce");
+            }
+            byte[] salt = Base64.getDecoder().decode(attribute(serverFirst, 's'));
+            int iterations = Integer.parseInt(attribute(serverFirst, 'i'));
+
+            String clientFinalWithoutProof = "c=biws,r=" + serverNonce;
+            String authMessage = clientFirstBare + "," + serverFirst + "," + clientFinalWithoutProof;
+
+            byte[] saltedPassword = Scram.saltedPassword(password, salt, iterations);
+            byte[] clientKey = Scram.clientKey(saltedPassword);
+            byte[] clientSignature = Scram.hmac(Scram.sha256(clientKey), authMessage);
+            byte[] proof = Scram.xor(clientKey, clientSignature);
+
+            send('p', (clientFinalWithoutProof + ",p=" + Base64.getEncoder().encodeToString(proof)).getBytes(StandardCharsets.UTF_8));
+            return Scram.hmac(Scram.serverKey(saltedPassword), authMessage);
+        }
+
+        private char readMessage() throws IOException {
+            char type = (char) in.readUnsignedByte();
+            bodyLength = in.readInt() - 4;
+            if (bodyLength < 0) {
+                throw new ProbeProtocolException("Invalid message length " + bodyLength + " for message " + type);
+            }
+            if (bodyLength > body.length) {
+                body = new byte[bodyLength];
+            }
+            in.readFully(body, 0, bodyLength);
+            if (type == 'E') {
+                throw new ProbeProtocolException("Server error: " + readFields());
+            }
+            return type;
+        }
+
+        private void send(char type, byte[] payload) throws IOException {
+            out.writeByte(type);
+            out.writeInt(4 + payload.length);
+            out.write(payload);
+            out.flush();
+        }
+
+        private int readInt(int offset) {
+            return ((body[offset] & 0xFF) << 24) | ((body[offset + 1] & 0xFF) << 16)
+                    | ((body[offset + 2] & 0xFF) << 8) | (body[offset + 3] & 0xFF);
+        }
+
+        private Set<String> readCStrings(int offset) {
+            Set<String> strings = new HashSet<>();
+            int start = offset;
+            for (int i = offset; i < bodyLength; i++) {
+                if (body[i] == 0) {
+                    if (i > start) {
+                        strings.add(new String(body, start, i - start, StandardCharsets.UTF_8));
+                    }
+                    start = i + 1;
+                }
+            }
+            return strings;
+        }
+
+        /**
+         * @return SQLSTATE and message of an ErrorResponse
+         */
+        private String readFields() {
+            String sqlState = null;
+            String message = null;
+            int i = 0;
+            while (i < bodyLength && body[i] != 0) {
+                char field = (char) body[i++];
+                int start = i;
+                while (i < bodyLength && body[i] != 0) {
+                    i++;
+                }
+                if (field == 'C') {
+                    sqlState = new String(body, start, i - start, StandardCharsets.UTF_8);
+                } else if (field == 'M') {
+                    message = new String(body, start, i - start, StandardCharsets.UTF_8);
+                }
+                i++;
+            }
+            return "[" + sqlState + "] " + message;
+        }
+
+        private ProbeProtocolException unexpected(char type) {
+            return new ProbeProtocolException("Unexpected message: " + type);
+        }
+    }
+
+    private static String attribute(String scramMessage, char name) throws ProbeProtocolException {
+        for (String part : scramMessage.split(",")) {
+            if (part.length() > 1 && part.charAt(0) == name && part.charAt(1) == '=') {
+                return part.substring(2);
+            }
+        }
+        throw new ProbeProtocolException("SCRAM message has no '" + name + "' attribute: " + scramMessage);
+    }
+
+    private static String nonce() {
+        byte[] bytes = new byte[18];
+        RANDOM.nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static byte[] cstring(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, bytes.length + 1);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
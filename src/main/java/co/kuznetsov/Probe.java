@@ -0,0 +1,17 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * A single connect-and-query attempt against a database endpoint.
+ */
+public interface Probe {
+
+    /**
+     * Connects, runs SELECT 1 and disconnects, recording the end of each phase in the given timings.
+     *
+     * @return the same timings, marked as successful
+     */
+    AttemptTimings knock(AttemptTimings attempt) throws SQLException, IOException;
+}
@@ -0,0 +1,163 @@
+package co.kuznetsov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs probe loops and other resume steps as futures. Every probe gets a deadline of its own: when it passes, the
+ * future completes with a timed-out outcome and the probe is cancelled, its in-flight attempt closed, instead of the
+ * caller joining one thread after another. Cancelling a returned future cancels the probe the same way, which is what
+ * {@link #anyOf} and {@link #firstSuccess} do to the probes that lost.
+ */
+public class ProbeEngine implements AutoCloseable {
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor deadlines;
+
+    /**
+     * @param executor runs the probe loops, one task per probe while it is running
+     */
+    public ProbeEngine(ExecutorService executor) {
+        this.executor = executor;
+        this.deadlines = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "probe-deadlines");
+            t.setDaemon(true);
+            return t;
+        });
+        this.deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts a probe loop built around the outcome reference it reports through.
+     *
+     * @return the outcome the probe reported, or a failed one if it was still running at the deadline
+     */
+    public CompletableFuture<ResumeOutcome> probe(Function<AtomicReference<ResumeOutcome>, ProbeRunnable> factory, long deadlineMillis) {
+        AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>();
+        ProbeRunnable knock = factory.apply(outcomeRef);
+        CompletableFuture<ResumeOutcome> result = new CompletableFuture<>();
+        AtomicBoolean finished = new AtomicBoolean();
+        Future<?> task = executor.submit(() -> {
+            try {
+                knock.run();
+                finished.set(true);
+                ResumeOutcome outcome = outcomeRef.get();
+                result.complete(outcome != null ? outcome : timedOut(deadlineMillis));
+            } catch (RuntimeException e) {
+                finished.set(true);
+                result.completeExceptionally(e);
+            }
+        });
+        ScheduledFuture<?> deadline = deadlines.schedule(
+                () -> result.complete(timedOut(deadlineMillis)), deadlineMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((outcome, e) -> {
+            deadline.cancel(false);
+            if (!finished.get()) {
+                knock.cancel();
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a step that is not a probe, such as moving an ENI, next to the probes.
+     */
+    public <T> CompletableFuture<T> call(Callable<T> step) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean finished = new AtomicBoolean();
+        Future<?> task = executor.submit(() -> {
+            try {
+                T value = step.call();
+                finished.set(true);
+                result.complete(value);
+            } catch (Exception e) {
+                finished.set(true);
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (!finished.get()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the outcome of whichever probe finishes first; the others are cancelled
+     */
+    public static CompletableFuture<ResumeOutcome> anyOf(List<CompletableFuture<ResumeOutcome>> probes) {
+        CompletableFuture<ResumeOutcome> first = new CompletableFuture<>();
+        for (CompletableFuture<ResumeOutcome> probe : probes) {
+            probe.whenComplete((outcome, e) -> {
+                if (e != null) {
+                    first.completeExceptionally(e);
+                } else {
+                    first.complete(outcome);
+                }
+            });
+        }
+        first.whenComplete((outcome, e) -> cancelAll(probes));
+        return first;
+    }
+
+    /**
+     * @return the first successful outcome, the others being cancelled, or the last outcome if none succeeded
+     */
+    public static CompletableFuture<ResumeOutcome> firstSuccess(List<CompletableFuture<ResumeOutcome>> probes) {
+        CompletableFuture<ResumeOutcome> first = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(probes.size());
+        for (CompletableFuture<ResumeOutcome> probe : probes) {
+            probe.whenComplete((outcome, e) -> {
+                if (e == null && !outcome.isFailure()) {
+                    first.complete(outcome);
+                } else if (remaining.decrementAndGet() == 0) {
+                    if (e != null) {
+                        first.completeExceptionally(e);
+                    } else {
+                        first.complete(outcome);
+                    }
+                }
+            });
+        }
+        first.whenComplete((outcome, e) -> cancelAll(probes));
+        return first;
+    }
+
+    /**
+     * @return every outcome, in the order the probes were given, once all of them are done
+     */
+    public static CompletableFuture<List<ResumeOutcome>> allOf(List<CompletableFuture<ResumeOutcome>> probes) {
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<ResumeOutcome> outcomes = new ArrayList<>(probes.size());
+            probes.forEach(probe -> outcomes.add(probe.join()));
+            return outcomes;
+        });
+    }
+
+    private static void cancelAll(List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static ResumeOutcome timedOut(long deadlineMillis) {
+        return new ResumeOutcome(true, true, deadlineMillis, false);
+    }
+
+    @Override
+    public void close() {
+        deadlines.shutdownNow();
+    }
+}
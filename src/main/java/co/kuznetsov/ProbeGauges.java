@@ -0,0 +1,43 @@
+package co.kuznetsov;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide counts of probe loops still running and probe connections still open. Both should fall back to zero
+ * between resumes; a count that keeps growing means probes outlive their deadline.
+ */
+public class ProbeGauges {
+    private static final AtomicInteger LIVE_PROBES = new AtomicInteger();
+    private static final AtomicInteger OPEN_CONNECTIONS = new AtomicInteger();
+
+    private ProbeGauges() {
+    }
+
+    public static void probeStarted() {
+        LIVE_PROBES.incrementAndGet();
+    }
+
+    public static void probeFinished() {
+        LIVE_PROBES.decrementAndGet();
+    }
+
+    public static void connectionOpened() {
+        OPEN_CONNECTIONS.incrementAndGet();
+    }
+
+    public static void connectionClosed() {
+        OPEN_CONNECTIONS.decrementAndGet();
+    }
+
+    public static int getLiveProbes() {
+        return LIVE_PROBES.get();
+    }
+
+    public static int getOpenConnections() {
+        return OPEN_CONNECTIONS.get();
+    }
+
+    public static String describe() {
+        return LIVE_PROBES.get() + " live probes, " + OPEN_CONNECTIONS.get() + " open probe connections";
+    }
+}
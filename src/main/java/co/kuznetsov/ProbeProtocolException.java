@@ -0,0 +1,14 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+
+/**
+ * The server answered a native protocol probe with an error or with something the probe does not understand.
+ */
+public class ProbeProtocolException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ProbeProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package co.kuznetsov;
+
+/**
+ * A probe loop that can be stopped from another thread. Besides ending the loop, {@link #cancel()} aborts the attempt
+ * in flight, closing its connection, since blocking socket calls do not respond to interrupts.
+ */
+public interface ProbeRunnable extends Runnable {
+
+    void cancel();
+}
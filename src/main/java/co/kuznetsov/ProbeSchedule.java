@@ -0,0 +1,58 @@
+package co.kuznetsov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-rate schedule for probe attempts: attempt slots are due every {@code cadence} from the start, whatever the
+ * previous attempt did. An attempt that overruns its slot makes the next one start late; the slots it covered are not
+ * fired in a burst but counted as omitted, and the late attempt is due at the latest slot that passed. Its lag against
+ * that slot is at most one cadence and says nothing about when the endpoint became reachable during the overrun; that
+ * uncertainty is the gap between attempt starts.
+ */
+public class ProbeSchedule {
+    private final long startNanos;
+    private final long cadenceNanos;
+    private long nextSlot;
+    private long omitted;
+
+    public ProbeSchedule(long startNanos, long cadenceMillis) {
+        this.startNanos = startNanos;
+        this.cadenceNanos = TimeUnit.MILLISECONDS.toNanos(cadenceMillis);
+    }
+
+    /**
+     * Parks until the next slot is due, or returns at once if it is overdue.
+     *
+     * @return intended start of the attempt, the latest slot due by now, in {@link System#nanoTime()} terms
+     */
+    public long awaitNext() {
+        long due = startNanos + nextSlot * cadenceNanos;
+        long now = System.nanoTime();
+        while (now < due) {
+            LockSupport.parkNanos(due - now);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            now = System.nanoTime();
+        }
+        if (cadenceNanos == 0) {
+            return now;
+        }
+        long following = Math.max(nextSlot + 1, (now - startNanos) / cadenceNanos + 1);
+        omitted += following - nextSlot - 1;
+        nextSlot = following;
+        return startNanos + (following - 1) * cadenceNanos;
+    }
+
+    public long getCadenceNanos() {
+        return cadenceNanos;
+    }
+
+    /**
+     * @return slots that passed while an earlier attempt was still running
+     */
+    public long getOmitted() {
+        return omitted;
+    }
+}
@@ -0,0 +1,180 @@
+package co.kuznetsov;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the workers of a canary while they bring their clusters up. Each RDS API action gets its own
+ * rate-limited token bucket shared by all workers, and only {@code maxConcurrentCreates} clusters are created at a
+ * time, from the create call until the instance is available. Workers whose cluster already exists get their tokens
+ * first, so a restarted canary starts measuring on the clusters it has while the missing ones are still being created.
+ * <p>
+ * How long the fleet took to come up and to be probed is published once to the canary's metrics sink.
+ */
+public class ProvisioningScheduler {
+    public static final String FLEET_BRING_UP = "fleetBringUpDuration";
+    public static final String FIRST_PROBE = "timeToFirstProbe";
+    public static final String FLEET_FIRST_PROBE = "fleetTimeToFirstProbe";
+
+    public enum Action {
+        DESCRIBE_CLUSTERS,
+        DESCRIBE_INSTANCES,
+        CREATE_CLUSTER,
+        CREATE_INSTANCE
+    }
+
+    /**
+     * In the order tokens are handed out.
+     */
+    public enum Priority {
+        /**
+         * Calls for a cluster that already exists.
+         */
+        EXISTING,
+        /**
+         * The first describe, which tells whether a cluster exists.
+         */
+        DISCOVERY,
+        /**
+         * Calls for a cluster being created.
+         */
+        NEW
+    }
+
+    private final int fleetSize;
+    private final int maxConcurrentCreates;
+    private final MetricsSink metricsSink;
+    private final Map<Action, RateLimiter> limiters = new EnumMap<>(Action.class);
+    private final Semaphore creates;
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();
+    private final long startNanos = System.nanoTime();
+    private volatile long fleetReadyNanos = -1;
+    private final Set<String> probed = ConcurrentHashMap.newKeySet();
+    private volatile long firstProbeNanos = -1;
+    private volatile long fleetProbedNanos = -1;
+
+    /**
+     * @param fleetSize instances to wait for before the fleet counts as up
+     * @param callsPerSecond calls allowed per second for each action, with bursts of as many
+     */
+    public ProvisioningScheduler(int fleetSize, double callsPerSecond, int maxConcurrentCreates, MetricsSink metricsSink) {
+        this.fleetSize = fleetSize;
+        this.maxConcurrentCreates = maxConcurrentCreates;
+        this.metricsSink = metricsSink;
+        this.creates = new Semaphore(maxConcurrentCreates, true);
+        int burst = Math.max(1, (int) Math.ceil(callsPerSecond));
+        for (Action action : Action.values()) {
+            limiters.put(action, new RateLimiter(new TokenBucket(burst, callsPerSecond)));
+        }
+    }
+
+    /**
+     * Waits until the action may be called. Call it before every attempt, retries included.
+     */
+    public void acquire(Action action, Priority priority) {
+        limiters.get(action).acquire(priority.ordinal());
+    }
+
+    /**
+     * Waits for a create slot, to be given back with {@link #endCreate()} once the instance is available or the
+     * attempt is abandoned.
+     */
+    public void beginCreate() {
+        try {
+            creates.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a create slot");
+        }
+    }
+
+    public void endCreate() {
+        creates.release();
+    }
+
+    /**
+     * Counts the instance as up, once; the fleet is up when every instance is.
+     */
+    public void ready(String instanceId) {
+        if (ready.add(instanceId) && ready.size() == fleetSize) {
+            fleetReadyNanos = System.nanoTime();
+            Log.info("fleet.ready", "instances", fleetSize, "bringUpMillis", getFleetBringUpMillis());
+            publish(FLEET_BRING_UP, getFleetBringUpMillis());
+        }
+    }
+
+    /**
+     * Records the first probe of an instance. Time-to-first-probe is reported for the first instance and for the whole
+     * fleet, from the start of provisioning.
+     */
+    public void probing(String instanceId) {
+        if (!probed.add(instanceId)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (probed.size() == 1) {
+            firstProbeNanos = now;
+            publish(FIRST_PROBE, sinceStart(firstProbeNanos));
+        }
+        if (probed.size() == fleetSize) {
+            fleetProbedNanos = now;
+            Log.info("fleet.probing", "instances", fleetSize, "firstProbeMillis", sinceStart(firstProbeNanos),
+                    "fleetFirstProbeMillis", sinceStart(fleetProbedNanos));
+            publish(FLEET_FIRST_PROBE, sinceStart(fleetProbedNanos));
+        }
+    }
+
+    private void publish(String metricName, long millis) {
+        try {
+            metricsSink.acceptFleetMetric(metricName, millis);
+        } catch (RuntimeException e) {
+            Exceptions.capture(e);
+        }
+    }
+
+    /**
+     * @return milliseconds from the start of provisioning until every instance had its first probe, or -1 before
+     */
+    public long getFleetFirstProbeMillis() {
+        return sinceStart(fleetProbedNanos);
+    }
+
+    private long sinceStart(long nanos) {
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos - startNanos);
+    }
+
+    /**
+     * @return milliseconds from the start of provisioning until the last instance was available, or -1 while some
+     * are still coming up
+     */
+    public long getFleetBringUpMillis() {
+        return sinceStart(fleetReadyNanos);
+    }
+
+    public String describe() {
+        long bringUpMillis = getFleetBringUpMillis();
+        String progress = bringUpMillis < 0
+                ? "for " + Duration.ofNanos(System.nanoTime() - startNanos).truncatedTo(ChronoUnit.SECONDS)
+                : "up in " + Duration.ofMillis(bringUpMillis);
+        StringBuilder sb = new StringBuilder()
+                .append(ready.size()).append('/').append(fleetSize).append(" ready ").append(progress).append(", ")
+                .append(maxConcurrentCreates - creates.availablePermits()).append(" creating, ")
+                .append(creates.getQueueLength()).append(" waiting to create, ")
+                .append(probed.size()).append(" probing");
+        if (firstProbeNanos >= 0) {
+            sb.append(", first probe after ").append(Duration.ofMillis(sinceStart(firstProbeNanos)));
+        }
+        if (fleetProbedNanos >= 0) {
+            sb.append(", fleet probing after ").append(Duration.ofMillis(sinceStart(fleetProbedNanos)));
+        }
+        limiters.forEach((action, limiter) -> sb.append(", ").append(action).append(' ').append(limiter.describe()));
+        return sb.toString();
+    }
+}
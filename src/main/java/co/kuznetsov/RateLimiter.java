@@ -0,0 +1,77 @@
+package co.kuznetsov;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Hands out the tokens of a {@link TokenBucket} to waiting threads by priority: a thread only takes a token when no
+ * thread with a more urgent priority, or the same priority and an earlier arrival, is waiting for one.
+ */
+public class RateLimiter {
+    private final TokenBucket bucket;
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+            Comparator.comparingInt((Ticket t) -> t.priority).thenComparingLong(t -> t.sequence));
+    private long sequence;
+    private long granted;
+    private long waited;
+
+    public RateLimiter(TokenBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * Waits for a token.
+     *
+     * @param priority lower goes first
+     * @throws CancellationException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire(int priority) {
+        Ticket ticket = new Ticket(priority, sequence++);
+        waiting.add(ticket);
+        notifyAll();
+        try {
+            boolean counted = false;
+            while (true) {
+                long wait = waiting.peek() == ticket ? bucket.tryAcquire() : Long.MAX_VALUE;
+                if (wait == 0) {
+                    granted++;
+                    return;
+                }
+                if (!counted) {
+                    waited++;
+                    counted = true;
+                }
+                if (wait == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a token");
+        } finally {
+            waiting.remove(ticket);
+            notifyAll();
+        }
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public synchronized String describe() {
+        return granted + " granted, " + waited + " waited, " + waiting.size() + " waiting";
+    }
+
+    private static class Ticket {
+        private final int priority;
+        private final long sequence;
+
+        private Ticket(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
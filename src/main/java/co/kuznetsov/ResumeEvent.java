@@ -0,0 +1,168 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Everything a canary reports about one resume, produced once by the worker and handed to every {@link MetricsSink}.
+ * Dimensions are reported in the order given, each metric once without dimensions and once per dimension.
+ */
+public class ResumeEvent {
+    public static final String TCP_REACHABLE_DURATION = "tcpReachableDuration";
+    public static final String HIGH_RES_SCHEDULE_LAG = "resumeDurationHighResScheduleLag";
+    public static final String HIGH_RES_RESOLUTION = "resumeDurationHighResResolution";
+    public static final String AUTO_PAUSE_LATENCY = "autoPauseLatency";
+
+    private final Instant startedAt;
+    private final ImmutableMap<String, String> dimensions;
+    private final boolean success;
+    private final Boolean noSleep;
+    private final boolean failure;
+    private final boolean clientInterrupt;
+    private final boolean connectionDrop;
+    private final Long resumeDuration;
+    private final Long resumeDurationHighRes;
+    private final ImmutableMap<String, Double> phaseMillis;
+
+    /**
+     * @param reportNoSleep whether a resume that found the instance awake counts as noSleep rather than success
+     */
+    public ResumeEvent(ResumeStats stats, boolean reportNoSleep, Map<String, String> dimensions) {
+        this(stats, reportNoSleep, dimensions, ImmutableMap.of());
+    }
+
+    /**
+     * @param extraPhaseMillis durations of phases measured outside the probes, in milliseconds, keyed by metric name
+     */
+    public ResumeEvent(ResumeStats stats, boolean reportNoSleep, Map<String, String> dimensions,
+                       Map<String, Double> extraPhaseMillis) {
+        this.startedAt = stats.getStartedAt();
+        this.dimensions = ImmutableMap.copyOf(dimensions);
+        this.failure = stats.isFailure();
+        this.success = !failure && (!reportNoSleep || stats.didSleep());
+        this.noSleep = reportNoSleep ? !failure && !stats.didSleep() : null;
+        this.clientInterrupt = stats.isClientInterrupt();
+        this.connectionDrop = stats.isConnectionDrop();
+        this.resumeDuration = stats.getResumeDuration();
+        this.resumeDurationHighRes = stats.getResumeDurationHighRes();
+
+        ImmutableMap.Builder<String, Double> phases = ImmutableMap.builder();
+        for (AttemptTimings.Phase phase : AttemptTimings.Phase.values()) {
+            Double millis = stats.getPhaseMillis(phase);
+            if (millis != null) {
+                phases.put(phase.getMetricName(), millis);
+            }
+        }
+        Double tcpReachableMillis = stats.getTcpReachableMillis();
+        if (tcpReachableMillis != null) {
+            phases.put(TCP_REACHABLE_DURATION, tcpReachableMillis);
+        }
+        Double scheduleLagMillis = stats.getHighResScheduleLagMillis();
+        if (scheduleLagMillis != null) {
+            phases.put(HIGH_RES_SCHEDULE_LAG, scheduleLagMillis);
+        }
+        Double resolutionMillis = stats.getHighResResolutionMillis();
+        if (resolutionMillis != null) {
+            phases.put(HIGH_RES_RESOLUTION, resolutionMillis);
+        }
+        Double autoPauseLatencyMillis = stats.getAutoPauseLatencyMillis();
+        if (autoPauseLatencyMillis != null) {
+            phases.put(AUTO_PAUSE_LATENCY, autoPauseLatencyMillis);
+        }
+        phases.putAll(extraPhaseMillis);
+        this.phaseMillis = phases.build();
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public ImmutableMap<String, String> getDimensions() {
+        return dimensions;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return null if the canary does not tell resumes of awake instances apart
+     */
+    public Boolean getNoSleep() {
+        return noSleep;
+    }
+
+    public boolean isFailure() {
+        return failure;
+    }
+
+    public boolean isClientInterrupt() {
+        return clientInterrupt;
+    }
+
+    public boolean isConnectionDrop() {
+        return connectionDrop;
+    }
+
+    public Long getResumeDuration() {
+        return resumeDuration;
+    }
+
+    public Long getResumeDurationHighRes() {
+        return resumeDurationHighRes;
+    }
+
+    /**
+     * @return durations of the resume phases that were measured, in milliseconds, keyed by metric name
+     */
+    public ImmutableMap<String, Double> getPhaseMillis() {
+        return phaseMillis;
+    }
+
+    /**
+     * @return counts keyed by metric name, in the order the canaries have always reported them
+     */
+    public ImmutableMap<String, Integer> getCounts() {
+        ImmutableMap.Builder<String, Integer> counts = ImmutableMap.builder();
+        counts.put("connectionDrop", connectionDrop ? 1 : 0);
+        counts.put("success", success ? 1 : 0);
+        if (noSleep != null) {
+            counts.put("noSleep", noSleep ? 1 : 0);
+        }
+        counts.put("failure", failure ? 1 : 0);
+        counts.put("clientInterrupt", clientInterrupt ? 1 : 0);
+        return counts.build();
+    }
+
+    /**
+     * @return resumeDuration and resumeDurationHighRes in milliseconds, whichever are known
+     */
+    public ImmutableMap<String, Long> getDurations() {
+        ImmutableMap.Builder<String, Long> durations = ImmutableMap.builder();
+        if (resumeDuration != null) {
+            durations.put("resumeDuration", resumeDuration);
+        }
+        if (resumeDurationHighRes != null) {
+            durations.put("resumeDurationHighRes", resumeDurationHighRes);
+        }
+        return durations.build();
+    }
+
+    @Override
+    public String toString() {
+        return "ResumeEvent{" +
+                "startedAt=" + startedAt +
+                ", dimensions=" + dimensions +
+                ", success=" + success +
+                ", noSleep=" + noSleep +
+                ", failure=" + failure +
+                ", clientInterrupt=" + clientInterrupt +
+                ", connectionDrop=" + connectionDrop +
+                ", resumeDuration=" + resumeDuration +
+                ", resumeDurationHighRes=" + resumeDurationHighRes +
+                ", phaseMillis=" + phaseMillis +
+                '}';
+    }
+}
@@ -0,0 +1,137 @@
+package co.kuznetsov;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process resume latency histograms of a canary, per engine version for both probes and per instance for the
+ * regular one. Every {@link #dump()} closes an interval: it prints the interval and everything since start, so
+ * percentiles over any window can be had without sending each sample to CloudWatch.
+ */
+public class ResumeHistograms {
+    private static final long HIGHEST_TRACKABLE_MILLIS = 10 * 60 * 1000;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int ENGINE_VERSION_STRIPES = Runtime.getRuntime().availableProcessors();
+
+    private final Map<String, Series> byEngineVersion = new ConcurrentHashMap<>();
+    private final Map<String, Series> byEngineVersionHighRes = new ConcurrentHashMap<>();
+    private final Map<String, Series> byInstance = new ConcurrentHashMap<>();
+    private final Map<String, Series> byPhase = new ConcurrentHashMap<>();
+
+    /**
+     * Records the resume durations of a successful resume; failed ones only measure how long we waited.
+     */
+    public void record(String engineVersion, String instanceId, ResumeStats stats) {
+        if (stats.isFailure()) {
+            return;
+        }
+        long duration = stats.getResumeDuration();
+        series(byEngineVersion, engineVersion, ENGINE_VERSION_STRIPES).record(duration);
+        series(byInstance, instanceId, 1).record(duration);
+        Long highRes = stats.getResumeDurationHighRes();
+        if (highRes != null) {
+            series(byEngineVersionHighRes, engineVersion, ENGINE_VERSION_STRIPES).record(highRes);
+        }
+    }
+
+    /**
+     * Records durations of the phases of a resume, keyed by metric name. A negative duration, a phase end estimated
+     * before its start, goes by its magnitude into a separate series suffixed "Negative" rather than counting as 0.
+     */
+    public void recordPhases(Map<String, Double> phaseMillis) {
+        phaseMillis.forEach((metricName, millis) -> {
+            if (millis < 0) {
+                series(byPhase, metricName + "Negative", 1).record(Math.round(-millis));
+            } else {
+                series(byPhase, metricName, 1).record(Math.round(millis));
+            }
+        });
+    }
+
+    /**
+     * @return everything recorded for the instance up to the last dump, or null if nothing was
+     */
+    public LatencyHistogram.Snapshot getInstanceSnapshot(String instanceId) {
+        Series series = byInstance.get(instanceId);
+        return series == null ? null : series.snapshot();
+    }
+
+    /**
+     * Closes the current interval and formats p50/p99/p99.9/max in milliseconds for the interval and since start, per
+     * engine version, for all engine versions together, for the slowest instance and per phase.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder("Resume duration ms n p50/p99/p99.9/max (interval | since start):");
+        dump(sb, "resumeDuration", byEngineVersion);
+        dump(sb, "resumeDurationHighRes", byEngineVersionHighRes);
+
+        String slowestInstance = null;
+        LatencyHistogram.Snapshot slowest = null;
+        for (Map.Entry<String, Series> entry : byInstance.entrySet()) {
+            entry.getValue().roll();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            if (slowest == null || snapshot.getValueAtPercentile(99) > slowest.getValueAtPercentile(99)) {
+                slowest = snapshot;
+                slowestInstance = entry.getKey();
+            }
+        }
+        if (slowest != null) {
+            sb.append("\n  slowest of ").append(byInstance.size()).append(" instances by p99: ")
+                    .append(slowestInstance).append(' ').append(slowest);
+        }
+        for (Map.Entry<String, Series> entry : new TreeMap<>(byPhase).entrySet()) {
+            LatencyHistogram.Snapshot interval = entry.getValue().roll();
+            sb.append("\n  ").append(entry.getKey()).append(": ").append(interval).append(" | ")
+                    .append(entry.getValue().snapshot());
+        }
+        return sb.toString();
+    }
+
+    private static void dump(StringBuilder sb, String metricName, Map<String, Series> byKey) {
+        LatencyHistogram.Snapshot allInterval = null;
+        LatencyHistogram.Snapshot allTotal = null;
+        for (Map.Entry<String, Series> entry : new TreeMap<>(byKey).entrySet()) {
+            LatencyHistogram.Snapshot interval = entry.getValue().roll();
+            LatencyHistogram.Snapshot total = entry.getValue().snapshot();
+            sb.append("\n  ").append(metricName).append(" engineVersion=").append(entry.getKey()).append(": ")
+                    .append(interval).append(" | ").append(total);
+            allInterval = allInterval == null ? interval : allInterval.merge(interval);
+            allTotal = allTotal == null ? total : allTotal.merge(total);
+        }
+        if (allInterval != null) {
+            sb.append("\n  ").append(metricName).append(" all: ").append(allInterval).append(" | ").append(allTotal);
+        }
+    }
+
+    private static Series series(Map<String, Series> byKey, String key, int stripes) {
+        return byKey.computeIfAbsent(key, k -> new Series(stripes));
+    }
+
+    private static class Series {
+        private final LatencyHistogram live;
+        private volatile LatencyHistogram.Snapshot sinceStart;
+
+        private Series(int stripes) {
+            this.live = new LatencyHistogram(HIGHEST_TRACKABLE_MILLIS, SIGNIFICANT_DIGITS, stripes);
+            this.sinceStart = live.emptySnapshot();
+        }
+
+        private void record(long millis) {
+            live.record(millis);
+        }
+
+        /**
+         * @return the interval just closed, which is also folded into the since start snapshot
+         */
+        private synchronized LatencyHistogram.Snapshot roll() {
+            LatencyHistogram.Snapshot interval = live.intervalSnapshot();
+            sinceStart = sinceStart.merge(interval);
+            return interval;
+        }
+
+        private LatencyHistogram.Snapshot snapshot() {
+            return sinceStart;
+        }
+    }
+}
@@ -5,12 +5,33 @@ public class ResumeOutcome {
     private final boolean failure;
     private final long duration;
     private final boolean clientInterrupt;
+    private final int attempts;
+    private final AttemptTimings lastAttempt;
+    private final double scheduleLagMillis;
+    private final double resolutionMillis;
 
     public ResumeOutcome(boolean connectionDrop, boolean failure, long duration, boolean clientInterrupt) {
+        this(connectionDrop, failure, duration, clientInterrupt, 0, null);
+    }
+
+    public ResumeOutcome(boolean connectionDrop, boolean failure, long duration, boolean clientInterrupt, int attempts, AttemptTimings lastAttempt) {
+        this(connectionDrop, failure, duration, clientInterrupt, attempts, lastAttempt, -1, -1);
+    }
+
+    /**
+     * @param scheduleLagMillis how late the last attempt started against its fixed-cadence slot, -1 if unscheduled
+     * @param resolutionMillis longest gap between attempt starts up to the last attempt, -1 if not tracked
+     */
+    public ResumeOutcome(boolean connectionDrop, boolean failure, long duration, boolean clientInterrupt, int attempts, AttemptTimings lastAttempt,
+                         double scheduleLagMillis, double resolutionMillis) {
         this.connectionDrop = connectionDrop;
         this.failure = failure;
         this.duration = duration;
         this.clientInterrupt = clientInterrupt;
+        this.attempts = attempts;
+        this.lastAttempt = lastAttempt;
+        this.scheduleLagMillis = scheduleLagMillis;
+        this.resolutionMillis = resolutionMillis;
     }
 
     public boolean isClientInterrupt() {
@@ -29,6 +50,32 @@ public class ResumeOutcome {
         return failure;
     }
 
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return phase timings of the attempt that ended the probe, the successful one unless the probe failed
+     */
+    public AttemptTimings getLastAttempt() {
+        return lastAttempt;
+    }
+
+    /**
+     * @return how late the last attempt started against its fixed-cadence slot, -1 if the probe was not scheduled
+     */
+    public double getScheduleLagMillis() {
+        return scheduleLagMillis;
+    }
+
+    /**
+     * @return longest gap between attempt starts up to the last attempt, bounding how long before the successful
+     * attempt started the endpoint may already have been reachable; -1 if not tracked
+     */
+    public double getResolutionMillis() {
+        return resolutionMillis;
+    }
+
     @Override
     public String toString() {
         return "ResumeOutcome{" +
@@ -36,6 +83,10 @@ public class ResumeOutcome {
                 ", failure=" + failure +
                 ", duration=" + duration +
                 ", clientInterrupt=" + clientInterrupt +
+                ", attempts=" + attempts +
+                ", lastAttempt=" + lastAttempt +
+                (scheduleLagMillis >= 0 ? ", scheduleLagMillis=" + String.format("%.3f", scheduleLagMillis) : "") +
+                (resolutionMillis >= 0 ? ", resolutionMillis=" + String.format("%.3f", resolutionMillis) : "") +
                 '}';
     }
 }
@@ -1,11 +1,35 @@
 package co.kuznetsov;
 
+import java.time.Instant;
+
 public class ResumeStats {
+    private final Instant startedAt;
     private final ResumeOutcome normal;
     private final ResumeOutcome highRes;
-    public ResumeStats(ResumeOutcome longTimeout, ResumeOutcome highRes) {
+    private final TcpReachability tcp;
+    private final Long autoPauseLatencyMillis;
+    public ResumeStats(Instant startedAt, ResumeOutcome longTimeout, ResumeOutcome highRes) {
+        this(startedAt, longTimeout, highRes, null);
+    }
+
+    public ResumeStats(Instant startedAt, ResumeOutcome longTimeout, ResumeOutcome highRes, TcpReachability tcp) {
+        this(startedAt, longTimeout, highRes, tcp, null);
+    }
+
+    /**
+     * @param autoPauseLatencyMillis from the end of the workload until the instance was seen paused, null if unknown
+     */
+    public ResumeStats(Instant startedAt, ResumeOutcome longTimeout, ResumeOutcome highRes, TcpReachability tcp,
+                       Long autoPauseLatencyMillis) {
+        this.startedAt = startedAt;
         this.normal = longTimeout;
         this.highRes = highRes;
+        this.tcp = tcp;
+        this.autoPauseLatencyMillis = autoPauseLatencyMillis;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
     }
 
     public boolean isClientInterrupt() {
@@ -33,11 +57,61 @@ public class ResumeStats {
         return highRes != null ? highRes.getDuration() : null;
     }
 
+    /**
+     * @return how late the successful high-res attempt started against its fixed-cadence slot, or null if the high-res
+     * probe failed or was not scheduled
+     */
+    public Double getHighResScheduleLagMillis() {
+        if (highRes == null || highRes.isFailure() || highRes.getScheduleLagMillis() < 0) {
+            return null;
+        }
+        return highRes.getScheduleLagMillis();
+    }
+
+    /**
+     * @return detection resolution the successful high-res probe achieved, or null if it failed or did not track it
+     */
+    public Double getHighResResolutionMillis() {
+        if (highRes == null || highRes.isFailure() || highRes.getResolutionMillis() < 0) {
+            return null;
+        }
+        return highRes.getResolutionMillis();
+    }
+
+    /**
+     * @return when the TCP port started accepting connections, relative to the start of the resume, or null if the
+     * TCP prober was not used or the port never became reachable
+     */
+    public Double getTcpReachableMillis() {
+        return tcp != null && tcp.isReachable() ? tcp.getElapsedMillis() : null;
+    }
+
+    /**
+     * @return how long after the workload stopped the instance was seen paused, or null if the pause was not confirmed
+     */
+    public Double getAutoPauseLatencyMillis() {
+        return autoPauseLatencyMillis != null ? autoPauseLatencyMillis.doubleValue() : null;
+    }
+
+    /**
+     * @return how long the successful attempt of the long timeout probe spent in the phase, or null if not known
+     */
+    public Double getPhaseMillis(AttemptTimings.Phase phase) {
+        AttemptTimings attempt = normal.getLastAttempt();
+        if (attempt == null || !attempt.isSuccess() || attempt.getPhaseNanos(phase) < 0) {
+            return null;
+        }
+        return attempt.getPhaseMillis(phase);
+    }
+
     @Override
     public String toString() {
         return "ResumeStats{" +
-                "normal=" + normal +
+                "startedAt=" + startedAt +
+                ", normal=" + normal +
                 ", highRes=" + highRes +
+                ", tcp=" + tcp +
+                ", autoPauseLatencyMillis=" + autoPauseLatencyMillis +
                 '}';
     }
 }
@@ -0,0 +1,215 @@
+package co.kuznetsov;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retries AWS calls according to a {@link RetryPolicy}. Failures are classified first: throttling and server or
+ * network errors are retried, anything else is rethrown at once since retrying a bad request only repeats it. Every
+ * retry is paid for from a shared {@link TokenBucket}, and every API has its own {@link CircuitBreaker}, so a
+ * throttled API makes callers back off together instead of each hammering it on its own schedule.
+ */
+public class Retrier {
+    public enum Failure {
+        THROTTLED,
+        TRANSIENT,
+        TERMINAL
+    }
+
+    private final TokenBucket budget;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMillis;
+    private final Map<String, Api> apis = new ConcurrentHashMap<>();
+
+    public Retrier(TokenBucket budget, int breakerFailureThreshold, long breakerOpenMillis) {
+        this.budget = budget;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMillis = breakerOpenMillis;
+    }
+
+    public void run(String api, RetryPolicy policy, Runnable action) {
+        call(api, policy, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param api name the call is counted and circuit broken under, such as "rds.CreateDBCluster"
+     * @throws CancellationException if the thread is interrupted while waiting to retry
+     */
+    public <T> T call(String api, RetryPolicy policy, Supplier<T> action) {
+        Api stats = apis.computeIfAbsent(api, k -> new Api(new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis)));
+        long delayMillis = 0;
+        int attempts = 0;
+        while (true) {
+            long wait;
+            while ((wait = stats.breaker.admit()) > 0) {
+                stats.breakerWaits.incrementAndGet();
+                pause(wait);
+            }
+            attempts++;
+            stats.calls.incrementAndGet();
+            Failure failure = Failure.TERMINAL;
+            try {
+                T result = action.get();
+                failure = null;
+                return result;
+            } catch (RuntimeException e) {
+                failure = classify(e, policy);
+                if (failure == Failure.TERMINAL || policy.isExhausted(attempts)) {
+                    stats.failures.incrementAndGet();
+                    Exceptions.capture(e);
+                    throw e;
+                }
+                if (failure == Failure.THROTTLED) {
+                    stats.throttles.incrementAndGet();
+                    stats.unpublishedThrottles.incrementAndGet();
+                }
+                Exceptions.capture(e);
+                Log.warn("retry", "api", api, "attempt", attempts, "failure", failure, "error", e.getMessage());
+            } finally {
+                if (failure == null || failure == Failure.TERMINAL) {
+                    // The API answered, even if it turned the request down
+                    stats.breaker.onSuccess();
+                } else {
+                    stats.breaker.onFailure();
+                }
+            }
+            delayMillis = policy.nextDelayMillis(delayMillis);
+            pause(delayMillis);
+            while ((wait = budget.tryAcquire()) > 0) {
+                stats.budgetWaits.incrementAndGet();
+                pause(wait);
+            }
+            stats.retries.incrementAndGet();
+            stats.unpublishedRetries.incrementAndGet();
+        }
+    }
+
+    static Failure classify(RuntimeException e, RetryPolicy policy) {
+        if (e instanceof SdkServiceException) {
+            SdkServiceException service = (SdkServiceException) e;
+            if (service.isThrottlingException()) {
+                return Failure.THROTTLED;
+            }
+            if (service.statusCode() >= 500 || service.isClockSkewException()) {
+                return Failure.TRANSIENT;
+            }
+            if (e instanceof AwsServiceException && ((AwsServiceException) e).awsErrorDetails() != null
+                    && policy.isRetryable(((AwsServiceException) e).awsErrorDetails().errorCode())) {
+                return Failure.TRANSIENT;
+            }
+            return Failure.TERMINAL;
+        }
+        if (e instanceof SdkClientException || e instanceof UncheckedIOException) {
+            return Failure.TRANSIENT;
+        }
+        return Failure.TERMINAL;
+    }
+
+    private static void pause(long millis) {
+        if (!Threads.sleep(millis)) {
+            throw new CancellationException("Interrupted while retrying");
+        }
+    }
+
+    /**
+     * @return retries and throttles per API since the last call, for publishing as metrics
+     */
+    public List<Delta> drainDeltas() {
+        List<Delta> deltas = new ArrayList<>();
+        apis.forEach((api, stats) -> {
+            long retries = stats.unpublishedRetries.getAndSet(0);
+            long throttles = stats.unpublishedThrottles.getAndSet(0);
+            if (retries > 0 || throttles > 0) {
+                deltas.add(new Delta(api, retries, throttles));
+            }
+        });
+        return deltas;
+    }
+
+    public long getRetries(String api) {
+        Api stats = apis.get(api);
+        return stats == null ? 0 : stats.retries.get();
+    }
+
+    public long getThrottles(String api) {
+        Api stats = apis.get(api);
+        return stats == null ? 0 : stats.throttles.get();
+    }
+
+    public boolean isOpen(String api) {
+        Api stats = apis.get(api);
+        return stats != null && stats.breaker.isOpen();
+    }
+
+    public String describe() {
+        long calls = 0, retries = 0, throttles = 0, failures = 0, budgetWaits = 0, breakerWaits = 0;
+        List<String> open = new ArrayList<>();
+        for (Map.Entry<String, Api> entry : apis.entrySet()) {
+            Api stats = entry.getValue();
+            calls += stats.calls.get();
+            retries += stats.retries.get();
+            throttles += stats.throttles.get();
+            failures += stats.failures.get();
+            budgetWaits += stats.budgetWaits.get();
+            breakerWaits += stats.breakerWaits.get();
+            if (stats.breaker.isOpen()) {
+                open.add(entry.getKey());
+            }
+        }
+        return calls + " calls, " + retries + " retries, " + throttles + " throttled, " + failures + " failed, " +
+                budgetWaits + " budget waits, " + breakerWaits + " breaker waits, open breakers " + open;
+    }
+
+    public static class Delta {
+        private final String api;
+        private final long retries;
+        private final long throttles;
+
+        private Delta(String api, long retries, long throttles) {
+            this.api = api;
+            this.retries = retries;
+            this.throttles = throttles;
+        }
+
+        public String getApi() {
+            return api;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getThrottles() {
+            return throttles;
+        }
+    }
+
+    private static class Api {
+        private final CircuitBreaker breaker;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong throttles = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong budgetWaits = new AtomicLong();
+        private final AtomicLong breakerWaits = new AtomicLong();
+        private final AtomicLong unpublishedRetries = new AtomicLong();
+        private final AtomicLong unpublishedThrottles = new AtomicLong();
+
+        private Api(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+    }
+}
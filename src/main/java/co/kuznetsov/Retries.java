@@ -0,0 +1,37 @@
+package co.kuznetsov;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide {@link Retrier} for AWS calls, sharing one retry budget and one circuit breaker per API between all
+ * workers.
+ */
+public class Retries {
+    private static final int BUDGET_CAPACITY = 100;
+    private static final double BUDGET_RETRIES_PER_SECOND = 10;
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = 10000;
+
+    private static final Retrier RETRIER = new Retrier(new TokenBucket(BUDGET_CAPACITY, BUDGET_RETRIES_PER_SECOND),
+            BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS);
+
+    private Retries() {
+    }
+
+    public static void run(String api, RetryPolicy policy, Runnable action) {
+        RETRIER.run(api, policy, action);
+    }
+
+    public static <T> T call(String api, RetryPolicy policy, Supplier<T> action) {
+        return RETRIER.call(api, policy, action);
+    }
+
+    public static List<Retrier.Delta> drainDeltas() {
+        return RETRIER.drainDeltas();
+    }
+
+    public static String describe() {
+        return RETRIER.describe();
+    }
+}
@@ -0,0 +1,59 @@
+package co.kuznetsov;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How one kind of AWS call is retried. Delays follow decorrelated jitter: each one is drawn between the base delay and
+ * three times the previous delay, capped, so callers that failed together do not come back together.
+ */
+public class RetryPolicy {
+    /**
+     * Reads such as describeDBInstances: cheap, retried quickly.
+     */
+    public static final RetryPolicy DESCRIBE = new RetryPolicy(200, 10000, 0, Set.of());
+    /**
+     * Creates, attaches and detaches. Conflicts with a resource still changing state are retried until it settles, and
+     * so is a log group or stream another canary created in the meantime, which the retry then finds.
+     */
+    public static final RetryPolicy MUTATE = new RetryPolicy(1000, 30000, 0,
+            Set.of("InvalidDBClusterStateFault", "InvalidDBInstanceState", "IncorrectState", "InvalidNetworkInterface.InUse",
+                    "ResourceAlreadyExistsException"));
+    /**
+     * putMetricData and putLogEvents, which run on a background thread and can afford to back off further.
+     */
+    public static final RetryPolicy TELEMETRY = new RetryPolicy(500, 60000, 0, Set.of());
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private final Set<String> retryableErrorCodes;
+
+    /**
+     * @param maxAttempts attempts before the last failure is rethrown, 0 to retry until success
+     * @param retryableErrorCodes client error codes that mean "not yet" rather than "never"
+     */
+    public RetryPolicy(long baseDelayMillis, long maxDelayMillis, int maxAttempts, Set<String> retryableErrorCodes) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryableErrorCodes = retryableErrorCodes;
+    }
+
+    /**
+     * @param previousMillis the previous delay, 0 before the first retry
+     */
+    public long nextDelayMillis(long previousMillis) {
+        long upper = Math.max(baseDelayMillis, previousMillis * 3);
+        long delay = upper > baseDelayMillis ? ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1) : baseDelayMillis;
+        return Math.min(maxDelayMillis, delay);
+    }
+
+    public boolean isExhausted(int attempts) {
+        return maxAttempts > 0 && attempts >= maxAttempts;
+    }
+
+    public boolean isRetryable(String errorCode) {
+        return errorCode != null && retryableErrorCodes.contains(errorCode);
+    }
+}
@@ -0,0 +1,269 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the state transitions of canary workers, kept in a memory-mapped file so that a restarted
+ * canary can tell where each worker stopped. Records have a fixed size and end with a checksum, written last; on
+ * open the file is replayed up to the first empty or damaged record, which is where appending continues.
+ * <p>
+ * Only the latest record of each transition of each worker matters, so when the file is full it is compacted down to
+ * those, written to a new file that then replaces the old one. The file is compacted on open as well. Appends are not
+ * forced to disk: the mapped pages survive the JVM dying, which is the restart this is for.
+ */
+public class RunJournal implements AutoCloseable {
+    public enum Transition {
+        /**
+         * The worker's instance was found or created and is available.
+         */
+        PROVISIONED,
+        /**
+         * The warm-up probe got through.
+         */
+        PROBED_READY,
+        /**
+         * The workload stopped; the value is the longest the worker idles before resuming.
+         */
+        IDLE_SINCE,
+        RESUME_STARTED
+    }
+
+    static final int RECORD_BYTES = 32;
+    private static final int CHECKED_BYTES = 28;
+
+    private final Path path;
+    private final Map<Integer, EnumMap<Transition, Record>> latest = new HashMap<>();
+    private final int recovered;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int position;
+    private long sequence;
+    private long appended;
+    private long compactions;
+
+    private RunJournal(Path path, int minCapacity) throws IOException {
+        this.path = path;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        map(path, Math.max(Math.max(1, minCapacity), (int) (Files.exists(path) ? Files.size(path) / RECORD_BYTES : 0)));
+        replay();
+        this.recovered = latest.size();
+        Log.info("journal.open", "path", path, "records", position, "workers", recovered);
+        compact();
+    }
+
+    /**
+     * Opens the journal, replaying and compacting what an earlier run left in it.
+     *
+     * @param minCapacity records the file has room for; it grows if compaction leaves it more than half full
+     */
+    public static RunJournal open(Path path, int minCapacity) throws IOException {
+        return new RunJournal(path, minCapacity);
+    }
+
+    public synchronized void append(int workerId, int run, Transition transition, Instant at, long value) {
+        Record record = new Record(workerId, run, transition, at.toEpochMilli(), value, sequence++);
+        latest.computeIfAbsent(workerId, k -> new EnumMap<>(Transition.class)).put(transition, record);
+        if (position == capacity) {
+            compact();
+        } else {
+            write(buffer, position++, record);
+        }
+        appended++;
+    }
+
+    public void append(int workerId, int run, Transition transition) {
+        append(workerId, run, transition, Instant.now(), 0);
+    }
+
+    /**
+     * @return the worker's state as of now, or null if the journal has nothing about it
+     */
+    public synchronized WorkerState getState(int workerId) {
+        EnumMap<Transition, Record> records = latest.get(workerId);
+        return records == null ? null : new WorkerState(records);
+    }
+
+    /**
+     * Rewrites the journal with only the latest record of each transition of each worker.
+     */
+    public synchronized void compact() {
+        List<Record> live = new ArrayList<>();
+        latest.values().forEach(records -> live.addAll(records.values()));
+        live.sort(Comparator.comparingLong(r -> r.sequence));
+        int newCapacity = capacity;
+        while (live.size() * 2 > newCapacity) {
+            newCapacity *= 2;
+        }
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            Files.deleteIfExists(compacted);
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, (long) newCapacity * RECORD_BYTES);
+                for (int i = 0; i < live.size(); i++) {
+                    write(target, i, live.get(i));
+                }
+                target.force();
+            }
+            channel.close();
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            map(path, newCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = live.size();
+        compactions++;
+        Log.info("journal.compacted", "records", position, "capacity", capacity);
+    }
+
+    public synchronized String describe() {
+        return latest.size() + " workers, " + position + "/" + capacity + " records, " + appended + " appended, " +
+                compactions + " compactions, " + recovered + " workers recovered";
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            Exceptions.capture(e);
+        }
+    }
+
+    private void map(Path file, int records) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_BYTES);
+        capacity = records;
+    }
+
+    private void replay() {
+        while (position < capacity) {
+            Record record = read(buffer, position, sequence);
+            if (record == null) {
+                break;
+            }
+            latest.computeIfAbsent(record.workerId, k -> new EnumMap<>(Transition.class)).put(record.transition, record);
+            position++;
+            sequence++;
+        }
+    }
+
+    private static void write(MappedByteBuffer target, int index, Record record) {
+        int offset = index * RECORD_BYTES;
+        target.putInt(offset, record.workerId);
+        target.putInt(offset + 4, record.run);
+        target.putLong(offset + 8, record.epochMillis);
+        target.putLong(offset + 16, record.value);
+        target.put(offset + 24, (byte) (record.transition.ordinal() + 1));
+        target.putInt(offset + CHECKED_BYTES, checksum(target, offset));
+    }
+
+    /**
+     * @return the record, or null if the slot is empty or damaged
+     */
+    private static Record read(MappedByteBuffer source, int index, long sequence) {
+        int offset = index * RECORD_BYTES;
+        int type = source.get(offset + 24);
+        if (type < 1 || type > Transition.values().length) {
+            return null;
+        }
+        if (source.getInt(offset + CHECKED_BYTES) != checksum(source, offset)) {
+            Log.warn("journal.damaged", "record", index);
+            return null;
+        }
+        return new Record(source.getInt(offset), source.getInt(offset + 4), Transition.values()[type - 1],
+                source.getLong(offset + 8), source.getLong(offset + 16), sequence);
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, CHECKED_BYTES));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * What the journal knows about a worker.
+     */
+    public static class WorkerState {
+        private final EnumMap<Transition, Record> records;
+        private final Record last;
+
+        private WorkerState(EnumMap<Transition, Record> records) {
+            this.records = new EnumMap<>(records);
+            this.last = records.values().stream().max(Comparator.comparingLong(r -> r.sequence)).orElseThrow();
+        }
+
+        public Transition getLast() {
+            return last.transition;
+        }
+
+        /**
+         * @return the run the last transition belongs to
+         */
+        public int getRun() {
+            return last.run;
+        }
+
+        /**
+         * @return when the transition last happened, or null if it never did
+         */
+        public Instant getTime(Transition transition) {
+            Record record = records.get(transition);
+            return record == null ? null : Instant.ofEpochMilli(record.epochMillis);
+        }
+
+        /**
+         * @return whether the worker stopped while its instance was idling
+         */
+        public boolean isIdle() {
+            return last.transition == Transition.IDLE_SINCE;
+        }
+
+        public Instant getIdleSince() {
+            return getTime(Transition.IDLE_SINCE);
+        }
+
+        public long getMaxIdleSeconds() {
+            Record record = records.get(Transition.IDLE_SINCE);
+            return record == null ? 0 : record.value;
+        }
+    }
+
+    private static class Record {
+        private final int workerId;
+        private final int run;
+        private final Transition transition;
+        private final long epochMillis;
+        private final long value;
+        private final long sequence;
+
+        private Record(int workerId, int run, Transition transition, long epochMillis, long value, long sequence) {
+            this.workerId = workerId;
+            this.run = run;
+            this.transition = transition;
+            this.epochMillis = epochMillis;
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package co.kuznetsov;
+
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs N simulated canary workers against a local listener to show what each worker costs in threads and heap
+ * for a given execution mode. Workers follow the same shape as the real ones: a probe, an idle period, then a
+ * resume with two concurrent probes.
+ */
+@CommandLine.Command(name = "scaling-benchmark", mixinStandardHelpOptions = true,
+        description = "Measure threads and heap per canary worker")
+public class ScalingBenchmark implements Callable<Integer> {
+    private static final long MAX_PROBE_WAIT_MILLIS = 5000;
+
+    @CommandLine.Option(
+            names = {"-c", "--clusters"},
+            description = "Number of simulated clusters",
+            defaultValue = "1000")
+    int clusters;
+
+    @CommandLine.Option(
+            names = {"-x", "--execution-mode"},
+            description = "Threads to run workers and probes on: ${COMPLETION-CANDIDATES}",
+            defaultValue = "PLATFORM")
+    ExecutionMode executionMode;
+
+    @CommandLine.Option(
+            names = {"-d", "--duration-seconds"},
+            description = "How long to run the workers",
+            defaultValue = "30")
+    int durationSeconds;
+
+    @CommandLine.Option(
+            names = {"-i", "--idle-millis"},
+            description = "Simulated idle period between resumes",
+            defaultValue = "1000")
+    int idleMillis;
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong failedProbes = new AtomicLong();
+
+    public static void main(String... args) {
+        int exitCode = new CommandLine(new ScalingBenchmark())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(args);
+        System.exit(exitCode);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0), 4096);
+            Thread acceptor = new Thread(() -> acceptForever(server), "benchmark-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            JvmStats baseline = JvmStats.snapshotAfterGc();
+            System.out.println("Baseline: " + baseline);
+
+            ExecutorService executor = executionMode.newExecutor("benchmark");
+            long started = System.nanoTime();
+            for (int i = 0; i < clusters; i++) {
+                executor.submit(() -> simulateWorker(executor, server.getLocalPort()));
+            }
+
+            long deadline = started + TimeUnit.SECONDS.toNanos(durationSeconds);
+            while (System.nanoTime() < deadline) {
+                Threads.sleep(Math.min(5000, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1));
+                System.out.println("Running " + clusters + " workers on " + executionMode + " threads: " +
+                        JvmStats.snapshot() + ", probes=" + probes.get() + ", failed=" + failedProbes.get());
+            }
+
+            JvmStats loaded = JvmStats.snapshotAfterGc();
+            executor.shutdownNow();
+
+            System.out.println("Loaded: " + loaded);
+            System.out.printf("Per worker: threads=%.2f, heap=%.1fKB, probes/s=%.1f, failed probes=%d%n",
+                    (double) (loaded.getLiveThreads() - baseline.getLiveThreads()) / clusters,
+                    (double) (loaded.getHeapUsedBytes() - baseline.getHeapUsedBytes()) / clusters / 1024,
+                    (double) probes.get() / durationSeconds, failedProbes.get());
+        }
+        return 0;
+    }
+
+    private void simulateWorker(ExecutorService executor, int port) {
+        while (!Thread.interrupted()) {
+            try {
+                executor.submit(() -> probe(port)).get(MAX_PROBE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                Thread.sleep(idleMillis);
+                Future<?> probe = executor.submit(() -> probe(port));
+                Future<?> probeHF = executor.submit(() -> probe(port));
+                Threads.await(probe, MAX_PROBE_WAIT_MILLIS);
+                Threads.await(probeHF, MAX_PROBE_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                Exceptions.capture(e);
+            }
+        }
+    }
+
+    private void probe(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 500);
+            probes.incrementAndGet();
+        } catch (IOException e) {
+            failedProbes.incrementAndGet();
+            Exceptions.capture(e);
+        }
+    }
+
+    private static void acceptForever(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                server.accept().close();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    Exceptions.capture(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package co.kuznetsov;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * SCRAM-SHA-256 primitives (RFC 5802 / RFC 7677) as used by PostgreSQL authentication.
+ */
+public class Scram {
+    public static final String MECHANISM = "SCRAM-SHA-256";
+
+    private Scram() {
+    }
+
+    public static byte[] saltedPassword(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 256);
+        return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+    }
+
+    public static byte[] hmac(byte[] key, String message) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] sha256(byte[] bytes) throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(bytes);
+    }
+
+    public static byte[] clientKey(byte[] saltedPassword) throws GeneralSecurityException {
+        return hmac(saltedPassword, "Client Key");
+    }
+
+    public static byte[] serverKey(byte[] saltedPassword) throws GeneralSecurityException {
+        return hmac(saltedPassword, "Server Key");
+    }
+
+    public static byte[] xor(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) (a[i] ^ b[i]);
+        }
+        return result;
+    }
+}
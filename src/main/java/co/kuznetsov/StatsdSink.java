@@ -0,0 +1,105 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Emits resume events as StatsD counters and timers with the event dimensions as DogStatsD tags. Lines are packed
+ * into datagrams of at most {@link #MAX_DATAGRAM_BYTES} and sent on a non-blocking channel: when the socket buffer is
+ * full the datagram is dropped and counted rather than holding up the worker.
+ */
+public class StatsdSink implements MetricsSink {
+    private static final int MAX_DATAGRAM_BYTES = 1432;
+
+    private final DatagramChannel channel;
+    private final String prefix;
+    private final String target;
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+    private long sent;
+    private long dropped;
+
+    public StatsdSink(String host, int port, String prefix) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        this.channel.connect(new InetSocketAddress(host, port));
+        this.prefix = prefix;
+        this.target = host + ":" + port;
+    }
+
+    @Override
+    public synchronized void accept(ResumeEvent event) {
+        String tags = tags(event);
+        event.getCounts().forEach((name, count) -> append(name, count, "c", tags));
+        event.getDurations().forEach((name, millis) -> append(name, millis, "ms", tags));
+        event.getPhaseMillis().forEach((name, millis) -> append(name, millis, "ms", tags));
+        send();
+    }
+
+    @Override
+    public synchronized void acceptFleetMetric(String metricName, long millis) {
+        append(metricName, millis, "ms", "");
+        send();
+    }
+
+    @Override
+    public synchronized String describe() {
+        return "StatsD " + target + ": " + sent + " datagrams sent, " + dropped + " dropped";
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Exceptions.capture(e);
+        }
+    }
+
+    private void append(String name, Number value, String type, String tags) {
+        byte[] line = (prefix + "." + name + ":" + value + "|" + type + tags + "\n").getBytes(StandardCharsets.UTF_8);
+        if (line.length > datagram.remaining()) {
+            send();
+        }
+        if (line.length <= datagram.remaining()) {
+            datagram.put(line);
+        } else {
+            dropped++;
+        }
+    }
+
+    private void send() {
+        if (datagram.position() == 0) {
+            return;
+        }
+        datagram.flip();
+        try {
+            if (channel.write(datagram) > 0) {
+                sent++;
+            } else {
+                dropped++;
+            }
+        } catch (IOException e) {
+            // Nobody listening (ICMP port unreachable) is not the worker's problem
+            dropped++;
+        } finally {
+            datagram.clear();
+        }
+    }
+
+    private static String tags(ResumeEvent event) {
+        if (event.getDimensions().isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("|#");
+        String separator = "";
+        for (Map.Entry<String, String> dimension : event.getDimensions().entrySet()) {
+            sb.append(separator).append(dimension.getKey()).append(':').append(dimension.getValue());
+            separator = ",";
+        }
+        return sb.toString();
+    }
+}
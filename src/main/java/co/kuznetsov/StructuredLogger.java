@@ -0,0 +1,234 @@
+package co.kuznetsov;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs structured records ("event key=value ...") without taking a lock on the logging thread: records are published
+ * into a fixed ring buffer by CAS and printed by a single writer thread, so probe threads never wait on the output
+ * stream. When the writer falls behind and the ring is full, records are dropped and counted.
+ * <p>
+ * Repeated records are sampled: records sharing an event and first value (by convention the instance or
+ * worker they are about) are printed at most {@code samplesPerSecond} times a second, and the next printed one carries
+ * the number suppressed in between.
+ * <p>
+ * The writer parks while the ring is empty and is unparked by the next record published, so an idle logger does not
+ * wake up on its own more than once a second.
+ */
+public class StructuredLogger {
+    private static final int MAX_SAMPLERS = 4096;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Object NO_SUBJECT = new Object();
+
+    private final PrintStream out;
+    private final int mask;
+    private final int samplesPerSecond;
+    private final AtomicReferenceArray<Record> ring;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile long printed;
+    private final Map<String, Map<Object, Sampler>> samplers = new ConcurrentHashMap<>();
+    private final AtomicInteger samplerCount = new AtomicInteger();
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean writerIdle;
+
+    /**
+     * @param capacity ring size, rounded up to a power of two
+     * @param samplesPerSecond records printed per event and subject and second, 0 to print everything
+     */
+    public StructuredLogger(PrintStream out, int capacity, int samplesPerSecond) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.out = out;
+        this.mask = size - 1;
+        this.samplesPerSecond = samplesPerSecond;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.writer = new Thread(this::writeLoop, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void info(String event, Object... keyValues) {
+        log("INFO", event, keyValues);
+    }
+
+    public void warn(String event, Object... keyValues) {
+        log("WARN", event, keyValues);
+    }
+
+    private void log(String level, String event, Object[] keyValues) {
+        logged.incrementAndGet();
+        long suppressedBefore = 0;
+        if (samplesPerSecond > 0) {
+            suppressedBefore = sample(event, keyValues);
+            if (suppressedBefore < 0) {
+                suppressed.incrementAndGet();
+                return;
+            }
+        }
+        Record record = new Record(System.currentTimeMillis(), level, event, Thread.currentThread().getName(),
+                keyValues, suppressedBefore);
+        while (true) {
+            long slot = claimed.get();
+            if (slot - consumed >= ring.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (claimed.compareAndSet(slot, slot + 1)) {
+                ring.set((int) (slot & mask), record);
+                if (writerIdle) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return -1 to suppress the record, otherwise the number of records suppressed since the last one printed
+     */
+    private long sample(String event, Object[] keyValues) {
+        Object subject = keyValues.length >= 2 && keyValues[1] != null ? keyValues[1] : NO_SUBJECT;
+        Map<Object, Sampler> bySubject = samplers.computeIfAbsent(event, e -> new ConcurrentHashMap<>());
+        Sampler sampler = bySubject.get(subject);
+        if (sampler == null) {
+            if (samplerCount.get() >= MAX_SAMPLERS) {
+                return 0;
+            }
+            sampler = bySubject.computeIfAbsent(subject, s -> {
+                samplerCount.incrementAndGet();
+                return new Sampler();
+            });
+        }
+        return sampler.admit(System.nanoTime(), samplesPerSecond);
+    }
+
+    /**
+     * Waits until everything logged so far has been printed, for tests and shutdown.
+     */
+    public void flush(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (printed < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    public String describe() {
+        return logged.get() + " logged, " + written.get() + " written, " + suppressed.get() + " sampled out, " +
+                dropped.get() + " dropped";
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder(8192);
+        while (true) {
+            long next = consumed;
+            int index = (int) (next & mask);
+            Record record = ring.get(index);
+            if (record == null) {
+                if (batch.length() > 0) {
+                    out.print(batch);
+                    out.flush();
+                    batch.setLength(0);
+                }
+                printed = next;
+                writerIdle = true;
+                if (ring.get(index) == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+            ring.set(index, null);
+            consumed = next + 1;
+            record.appendTo(batch);
+            written.incrementAndGet();
+            if (batch.length() >= 8192) {
+                out.print(batch);
+                batch.setLength(0);
+                printed = next + 1;
+            }
+        }
+    }
+
+    private static class Sampler {
+        private long windowStartNanos = System.nanoTime();
+        private int admitted;
+        private long suppressed;
+
+        private synchronized long admit(long now, int perSecond) {
+            if (now - windowStartNanos >= TimeUnit.SECONDS.toNanos(1)) {
+                windowStartNanos = now;
+                admitted = 0;
+            }
+            if (admitted >= perSecond) {
+                suppressed++;
+                return -1;
+            }
+            admitted++;
+            long result = suppressed;
+            suppressed = 0;
+            return result;
+        }
+    }
+
+    private static class Record {
+        private final long timestamp;
+        private final String level;
+        private final String event;
+        private final String thread;
+        private final Object[] keyValues;
+        private final long suppressed;
+
+        private Record(long timestamp, String level, String event, String thread, Object[] keyValues, long suppressed) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.event = event;
+            this.thread = thread;
+            this.keyValues = keyValues;
+            this.suppressed = suppressed;
+        }
+
+        private void appendTo(StringBuilder sb) {
+            sb.append(Instant.ofEpochMilli(timestamp)).append(' ').append(level).append(' ').append(event)
+                    .append(" thread=").append(thread);
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                if (keyValues[i + 1] != null) {
+                    sb.append(' ').append(keyValues[i]).append('=');
+                    appendValue(sb, String.valueOf(keyValues[i + 1]));
+                }
+            }
+            if (suppressed > 0) {
+                sb.append(" suppressed=").append(suppressed);
+            }
+            sb.append(System.lineSeparator());
+        }
+
+        private static void appendValue(StringBuilder sb, String value) {
+            if (value.indexOf(' ') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                sb.append(value);
+                return;
+            }
+            sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package co.kuznetsov;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a TCP port started accepting connections, measured from the moment it started being watched.
+ */
+public class TcpReachability {
+    private final boolean reachable;
+    private final long elapsedNanos;
+    private final int attempts;
+
+    public TcpReachability(boolean reachable, long elapsedNanos, int attempts) {
+        this.reachable = reachable;
+        this.elapsedNanos = elapsedNanos;
+        this.attempts = attempts;
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "TcpReachability{" +
+                "reachable=" + reachable +
+                ", elapsed=" + String.format("%.3f", getElapsedMillis()) +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
@@ -0,0 +1,202 @@
+package co.kuznetsov;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dials any number of endpoints with non-blocking connects from a single selector thread until each of them accepts
+ * a TCP connection. A refused or timed out connect is retried after the retry interval, so the moment a port started
+ * accepting is known to within that interval plus one round trip. A host name that does not resolve counts as a
+ * refused connect and is resolved again on the next attempt.
+ */
+public class TcpReachabilityProber {
+    private static final long CONNECT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final Selector selector;
+    private final Queue<Target> added = new ConcurrentLinkedQueue<>();
+    private final List<Target> waiting = new ArrayList<>();
+    private final AtomicInteger watched = new AtomicInteger();
+    private final long retryIntervalNanos;
+    private final Thread thread;
+
+    public TcpReachabilityProber(long retryIntervalMillis) throws IOException {
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+        this.selector = Selector.open();
+        this.thread = new Thread(this::selectLoop, "tcp-prober");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts dialing the endpoint. The future completes when a connect succeeds, or unreachable after maxWaitMillis.
+     */
+    public CompletableFuture<TcpReachability> watch(String host, int port, long maxWaitMillis) {
+        Target target = new Target(new InetSocketAddress(host, port), System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+        watched.incrementAndGet();
+        target.result.whenComplete((r, t) -> watched.decrementAndGet());
+        added.add(target);
+        selector.wakeup();
+        return target.result;
+    }
+
+    public int getWatchedCount() {
+        return watched.get();
+    }
+
+    public void shutdown() {
+        thread.interrupt();
+        selector.wakeup();
+    }
+
+    private void selectLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Target next;
+                while ((next = added.poll()) != null) {
+                    waiting.add(next);
+                }
+
+                long now = System.nanoTime();
+                long nextWakeup = now + TimeUnit.SECONDS.toNanos(1);
+                Iterator<Target> it = waiting.iterator();
+                while (it.hasNext()) {
+                    Target target = it.next();
+                    if (target.isExpired(now)) {
+                        it.remove();
+                        target.complete(false, now);
+                    } else if (target.nextAttemptNanos <= now) {
+                        it.remove();
+                        dial(target, now);
+                    } else {
+                        nextWakeup = Math.min(nextWakeup, target.nextAttemptNanos);
+                    }
+                }
+                for (SelectionKey key : selector.keys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    Target target = (Target) key.attachment();
+                    nextWakeup = Math.min(nextWakeup, target.attemptStartNanos + CONNECT_TIMEOUT_NANOS);
+                }
+
+                long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(nextWakeup - now);
+                if (timeoutMillis > 0) {
+                    selector.select(timeoutMillis);
+                } else {
+                    selector.selectNow();
+                }
+
+                now = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    finishConnect(key, now);
+                }
+                selector.selectedKeys().clear();
+
+                for (SelectionKey key : selector.keys()) {
+                    Target target = (Target) key.attachment();
+                    if (key.isValid() && now - target.attemptStartNanos > CONNECT_TIMEOUT_NANOS) {
+                        retryLater(key, target, now);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Exceptions.capture(e);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+    }
+
+    private void dial(Target target, long now) {
+        target.attempts++;
+        target.attemptStartNanos = now;
+        SocketChannel channel = null;
+        try {
+            if (target.address.isUnresolved()) {
+                target.address = new InetSocketAddress(target.address.getHostString(), target.address.getPort());
+            }
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(target.address)) {
+                channel.close();
+                target.complete(true, System.nanoTime());
+                return;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, target);
+        } catch (IOException | RuntimeException e) {
+            // Refused, or the name did not resolve (UnresolvedAddressException)
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    // Nothing to do, the attempt is over either way
+                }
+            }
+            target.nextAttemptNanos = now + retryIntervalNanos;
+            waiting.add(target);
+        }
+    }
+
+    private void finishConnect(SelectionKey key, long now) {
+        Target target = (Target) key.attachment();
+        try {
+            if (((SocketChannel) key.channel()).finishConnect()) {
+                closeQuietly(key);
+                target.complete(true, now);
+            }
+        } catch (IOException e) {
+            retryLater(key, target, now);
+        }
+    }
+
+    private void retryLater(SelectionKey key, Target target, long now) {
+        closeQuietly(key);
+        target.nextAttemptNanos = now + retryIntervalNanos;
+        waiting.add(target);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Nothing to do, the attempt is over either way
+        }
+    }
+
+    private static class Target {
+        private InetSocketAddress address;
+        private final long startNanos;
+        private final long maxWaitNanos;
+        private final CompletableFuture<TcpReachability> result = new CompletableFuture<>();
+        private long nextAttemptNanos;
+        private long attemptStartNanos;
+        private int attempts;
+
+        private Target(InetSocketAddress address, long startNanos, long maxWaitNanos) {
+            this.address = address;
+            this.startNanos = startNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.nextAttemptNanos = startNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - startNanos > maxWaitNanos || result.isDone();
+        }
+
+        private void complete(boolean reachable, long now) {
+            result.complete(new TcpReachability(reachable, now - startNanos, attempts));
+        }
+    }
+}
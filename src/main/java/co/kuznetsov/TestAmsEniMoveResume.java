@@ -1,27 +1,28 @@
 package co.kuznetsov;
 
 
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
 import com.mysql.cj.jdbc.Driver;
 import picocli.CommandLine;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
-import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
-import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
-import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.*;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @CommandLine.Command(name = "test-eni-move", mixinStandardHelpOptions = true,
         description = "Test ENI moves")
 public class TestAmsEniMoveResume implements Callable<Integer> {
     private static final long MAX_RESUME_WAIT_MILLIS = 90000;
+    private static final String METRICS_NAMESPACE = "ASv2ResumeCanary";
     private static final long MAX_ENI_OP_WAIT_MILLIS = 120000;
+    private static final long ENI_POLL_MIN_MILLIS = 100;
+    private static final long ENI_POLL_MAX_MILLIS = 1000;
+    private static final int HISTOGRAM_DUMP_RUNS = 10;
     @CommandLine.Option(
             names = {"-e", "--endpoint"},
             description = "Endpoint",
@@ -46,6 +47,19 @@ public class TestAmsEniMoveResume implements Callable<Integer> {
             required = true)
     private String password;
 
+    @CommandLine.Option(
+            names = {"-np", "--native-probe"},
+            description = "Probe with the built-in MySQL protocol client instead of mysql-connector-j")
+    private boolean nativeProbe;
+
+    @CommandLine.Mixin
+    private MetricsSinkOptions metricsSinkOptions = new MetricsSinkOptions();
+
+    private MetricsSink metricsSink;
+    private ProbeEngine probeEngine;
+    private EniTracker eniTracker;
+    private final ResumeHistograms resumeHistograms = new ResumeHistograms();
+
     @CommandLine.Option(
             names = {"-s", "--sleep-instance-id"},
             description = "Sleeper Instance ID",
@@ -81,190 +95,121 @@ public class TestAmsEniMoveResume implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
+        metricsSink = metricsSinkOptions.create(METRICS_NAMESPACE, null, null);
+        probeEngine = new ProbeEngine(ExecutionMode.PLATFORM.newExecutor("probe"));
+        eniTracker = new EniTracker(AwsClients.ec2(), ENI_POLL_MIN_MILLIS, ENI_POLL_MAX_MILLIS);
+        Runtime.getRuntime().addShutdownHook(new Thread(metricsSink::close));
         int run = 0;
         while (!Thread.interrupted()) {
             try {
                 System.out.println("Run: " + (run++));
                 parkEniWithASleeper();
-                ResumeStats stats = resume();
-                reportMetrics(stats);
+                EniMoveTimeline timeline = new EniMoveTimeline();
+                ResumeStats stats = resume(timeline);
+                reportMetrics(stats, timeline);
             } catch (Exception e) {
                 Exceptions.capture(e);
                 Threads.sleep(1000);
             }
+            if (run % HISTOGRAM_DUMP_RUNS == 0) {
+                System.out.println(resumeHistograms.dump());
+                System.out.println("ENI tracker: " + eniTracker.describe());
+            }
         }
         return 0;
     }
 
-    private ResumeStats resume() {
-        System.out.println("Starting resume...");
-        AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>(null);
-        AtomicReference<ResumeOutcome> outcomeHfRef = new AtomicReference<>(null);
+    private Probe newProbe(int connectTimeoutMillis) {
+        if (nativeProbe) {
+            return new MySqlWireProbe(endpoint, port, username, password, "", connectTimeoutMillis, true);
+        }
+        return new JdbcProbe("mysql", endpoint, port, "", username, password, connectTimeoutMillis, false);
+    }
 
-        Thread connectionThread = new Thread(new DoorKnockRunnable(
-                outcomeRef,
-                endpoint,
-                port,
-                username,
-                password,
+    private ResumeStats resume(EniMoveTimeline timeline) {
+        System.out.println("Starting resume...");
+        Instant startedAt = Instant.now();
+        CompletableFuture<ResumeOutcome> normal = probeEngine.probe(ref -> new DoorKnockRunnable(
+                ref,
+                newProbe(DoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
                 MAX_RESUME_WAIT_MILLIS
-        ));
-        Thread connectionThreadHF = new Thread(new HFDoorKnockRunnable(
-                outcomeHfRef,
-                endpoint,
-                port,
-                username,
-                password,
+        ), MAX_RESUME_WAIT_MILLIS);
+        CompletableFuture<ResumeOutcome> highRes = probeEngine.probe(ref -> new HFDoorKnockRunnable(
+                ref,
+                newProbe(HFDoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
                 MAX_RESUME_WAIT_MILLIS
-        ));
-
-        connectionThread.start();
-        connectionThreadHF.start();
+        ), MAX_RESUME_WAIT_MILLIS);
+        CompletableFuture<Void> move = probeEngine.call(() -> {
+            moveEniToDbInstance(timeline);
+            return null;
+        });
+        move.whenComplete((moved, e) -> {
+            if (e != null) {
+                normal.cancel(true);
+                highRes.cancel(true);
+            }
+        });
 
         try {
-            moveEniToDbInstance();
-            connectionThread.join(MAX_RESUME_WAIT_MILLIS);
-            connectionThreadHF.join(MAX_RESUME_WAIT_MILLIS);
-            if (connectionThread.isAlive()) {
-                connectionThread.interrupt();
-                outcomeRef.set(new ResumeOutcome(true, true, MAX_RESUME_WAIT_MILLIS, false));
-            }
-            // By no outcomeRef is surely set
-            return new ResumeStats(outcomeRef.get(), outcomeHfRef.get());
+            List<ResumeOutcome> outcomes = move.thenCombine(ProbeEngine.allOf(List.of(normal, highRes)), (moved, probed) -> probed).get();
+            return new ResumeStats(startedAt, outcomes.get(0), outcomes.get(1));
         } catch (InterruptedException e) {
-            return new ResumeStats(new ResumeOutcome(false, false, -1, true), null);
-        } catch (Exception e) {
-            Exceptions.capture(e);
-            return new ResumeStats(new ResumeOutcome(false, true, -1, true), null);
+            move.cancel(true);
+            return new ResumeStats(startedAt, new ResumeOutcome(false, false, -1, true), null);
+        } catch (ExecutionException e) {
+            Exceptions.capture(e.getCause());
+            return new ResumeStats(startedAt, new ResumeOutcome(false, true, -1, true), null);
         }
     }
 
-    private void moveEniToDbInstance() throws Exception {
-        try (Ec2Client ec2 = Ec2Client.builder().build()) {
+    /**
+     * Records in the timeline when each step was requested and when the ENI was seen through it.
+     */
+    private void moveEniToDbInstance(EniMoveTimeline timeline) throws Exception {
+        try {
+            Ec2Client ec2 = AwsClients.ec2();
             // Making sure DB ENI is detached
-            DescribeNetworkInterfacesRequest describeInterfaces = DescribeNetworkInterfacesRequest.builder().
-                    networkInterfaceIds(dbEniId).build();
-
-            DescribeNetworkInterfacesResponse netInterfacesDescription = ec2.describeNetworkInterfaces(describeInterfaces);
-            NetworkInterface ni = Iterables.getOnlyElement(netInterfacesDescription.networkInterfaces());
-
-            var attachment = ni.attachment();
-            if (attachment != null) {
+            NetworkInterface ni = eniTracker.describe(List.of(dbEniId)).get(dbEniId);
+            if (ni.attachment() != null) {
                 System.out.println("Interface is attached, detaching...");
-                String attachmentId = attachment.attachmentId();
-                var detachRequest = DetachNetworkInterfaceRequest.builder().attachmentId(attachmentId).build();
-                ec2.detachNetworkInterface(detachRequest);
+                timeline.detachRequested(Instant.now());
             }
+            timeline.detached(await(detach(ec2, ni)));
 
-            waitWhileEni(dbEniId, eni -> (eni.status() != NetworkInterfaceStatus.AVAILABLE), "Waiting for DB ENI to detach from sleeper", MAX_ENI_OP_WAIT_MILLIS);
-
-            // Attaching it to sleeper instance
+            // Attaching it to DB instance
             System.out.println("Attaching eni to DB instance");
-            var attachRequest = AttachNetworkInterfaceRequest.builder()
-                    .deviceIndex(1)
-                    .networkInterfaceId(dbEniId)
-                    .instanceId(dbInstanceId)
-                    .build();
-            System.out.println(ec2.attachNetworkInterface(attachRequest));
-
+            timeline.attachRequested(Instant.now());
+            CompletableFuture<EniTracker.Observation> attached = attach(ec2, dbEniId, dbInstanceId);
             System.out.println("Attach requested.");
-            waitWhileEni(dbEniId, eni -> (eni.status() != NetworkInterfaceStatus.IN_USE), "Waiting for DB ENI to attach to DB", MAX_ENI_OP_WAIT_MILLIS);
+            timeline.attached(await(attached));
         } catch (Exception e) {
             Exceptions.capture(e);
             throw e;
         }
     }
 
-    private void reportMetrics(ResumeStats outcome) {
-        CloudWatchClient cw = CloudWatchClient.builder().build();
-        var now = Instant.now();
-
-        var clientInterrupt = MetricDatum.builder()
-                .metricName("clientInterrupt")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isClientInterrupt() ? 1 : 0))
-                .build();
-        var success = MetricDatum.builder()
-                .metricName("success")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isFailure() ? 0 : 1))
-                .build();
-        var failure = MetricDatum.builder()
-                .metricName("failure")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isFailure() ? 1 : 0))
-                .build();
-        var connectionDrop = MetricDatum.builder()
-                .metricName("connectionDrop")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isConnectionDrop() ? 1 : 0))
-                .build();
-        var resumeDuration = MetricDatum.builder()
-                .metricName("resumeDuration")
-                .value((double) outcome.getResumeDuration())
-                .timestamp(now)
-                .unit(StandardUnit.MILLISECONDS)
-                .build();
-        var resumeDurationHighRes = MetricDatum.builder()
-                .metricName("resumeDurationHighRes")
-                .value((double) outcome.getResumeDurationHighRes())
-                .timestamp(now)
-                .unit(StandardUnit.MILLISECONDS)
-                .build();
-        var dataRequest = PutMetricDataRequest.builder()
-                .metricData(
-                        connectionDrop,
-                        resumeDuration,
-                        resumeDurationHighRes,
-                        success,
-                        failure,
-                        clientInterrupt
-                ).namespace("ASv2ResumeCanary")
-                .build();
-        Threads.retryUntilSuccess(() -> {
-            cw.putMetricData(dataRequest);
-        });
-        System.out.println("Posted metrics to CW: " + outcome);
+    private void reportMetrics(ResumeStats outcome, EniMoveTimeline timeline) {
+        ImmutableMap<String, Double> eniPhases = timeline.getPhaseMillis(outcome);
+        metricsSink.accept(new ResumeEvent(outcome, false, ImmutableMap.of(), eniPhases));
+        resumeHistograms.recordPhases(eniPhases);
+        Log.info("eni.timeline", "timeline", timeline.describe(outcome));
+        System.out.println("Reported metrics: " + outcome);
     }
 
+    /**
+     * Detaches the sleeper's own ENI and the DB ENI at the same time, then attaches the DB ENI to the sleeper.
+     */
     private void parkEniWithASleeper() throws Exception {
         System.out.println("Parking ENI with a sleeper instance... ");
-        try (Ec2Client ec2 = Ec2Client.builder().build()) {
-            detachSleeperEni(ec2);
-
-            // Making sure DB ENI is detached
-            DescribeNetworkInterfacesRequest describeInterfaces = DescribeNetworkInterfacesRequest.builder().
-                    networkInterfaceIds(dbEniId).build();
-
-            DescribeNetworkInterfacesResponse netInterfacesDescription = ec2.describeNetworkInterfaces(describeInterfaces);
-            NetworkInterface ni = Iterables.getOnlyElement(netInterfacesDescription.networkInterfaces());
-
-            var attachment = ni.attachment();
-            if (attachment != null) {
-                Threads.retryUntilSuccess(() -> {
-                    String attachmentId = attachment.attachmentId();
-                    var detachRequest = DetachNetworkInterfaceRequest.builder().attachmentId(attachmentId).build();
-                    ec2.detachNetworkInterface(detachRequest);
-                });
-            }
-
-            waitWhileEni(dbEniId, eni -> (eni.status() != NetworkInterfaceStatus.AVAILABLE), "Waiting for detachment to be done", MAX_ENI_OP_WAIT_MILLIS);
+        try {
+            Ec2Client ec2 = AwsClients.ec2();
+            Map<String, NetworkInterface> enis = eniTracker.describe(List.of(sleeperEni, dbEniId));
+            CompletableFuture<EniTracker.Observation> sleeperDetached = detach(ec2, enis.get(sleeperEni));
+            CompletableFuture<EniTracker.Observation> dbDetached = detach(ec2, enis.get(dbEniId));
+            await(CompletableFuture.allOf(sleeperDetached, dbDetached));
 
             // Attaching it to sleeper instance
-            Threads.retryUntilSuccess(() -> {
-                var attachRequest = AttachNetworkInterfaceRequest.builder()
-                        .deviceIndex(1)
-                        .networkInterfaceId(dbEniId)
-                        .instanceId(sleeperInstanceId)
-                        .build();
-                ec2.attachNetworkInterface(attachRequest);
-            });
-
-            waitWhileEni(dbEniId, eni -> (eni.status() != NetworkInterfaceStatus.IN_USE), "Waiting for ENI to attach to sleeper", MAX_ENI_OP_WAIT_MILLIS);
+            await(attach(ec2, dbEniId, sleeperInstanceId));
         } catch (Exception e) {
             Exceptions.capture(e);
             throw e;
@@ -272,54 +217,45 @@ public class TestAmsEniMoveResume implements Callable<Integer> {
         System.out.println("Done parking!");
     }
 
-    private void detachSleeperEni(Ec2Client ec2) throws Exception {
-        DescribeNetworkInterfacesRequest describeSleeperEni = DescribeNetworkInterfacesRequest.builder().
-                networkInterfaceIds(sleeperEni).build();
-        DescribeNetworkInterfacesResponse netInterfacesDescription = ec2.describeNetworkInterfaces(describeSleeperEni);
-        NetworkInterface ni = Iterables.getOnlyElement(netInterfacesDescription.networkInterfaces());
-        var attachment = ni.attachment();
-
+    /**
+     * Requests the detach if the ENI is attached.
+     *
+     * @return completes once the ENI is seen available
+     */
+    private CompletableFuture<EniTracker.Observation> detach(Ec2Client ec2, NetworkInterface eni) {
+        var attachment = eni.attachment();
         if (attachment != null) {
-            Threads.retryUntilSuccess(() -> {
-                String attachmentId = attachment.attachmentId();
-                var detachRequest = DetachNetworkInterfaceRequest.builder().attachmentId(attachmentId).build();
+            Retries.run("ec2.DetachNetworkInterface", RetryPolicy.MUTATE, () -> {
+                var detachRequest = DetachNetworkInterfaceRequest.builder().attachmentId(attachment.attachmentId()).build();
                 ec2.detachNetworkInterface(detachRequest);
             });
         }
+        return eniTracker.await(eni.networkInterfaceId(), ni -> ni.status() == NetworkInterfaceStatus.AVAILABLE, MAX_ENI_OP_WAIT_MILLIS);
+    }
 
-        waitWhileEni(sleeperEni, eni -> (eni.status() != NetworkInterfaceStatus.AVAILABLE), "Waiting for sleeper ENI to be detached", MAX_ENI_OP_WAIT_MILLIS);
+    /**
+     * @return completes once the ENI is seen in use
+     */
+    private CompletableFuture<EniTracker.Observation> attach(Ec2Client ec2, String eniId, String instanceId) {
+        Retries.run("ec2.AttachNetworkInterface", RetryPolicy.MUTATE, () -> {
+            var attachRequest = AttachNetworkInterfaceRequest.builder()
+                    .deviceIndex(1)
+                    .networkInterfaceId(eniId)
+                    .instanceId(instanceId)
+                    .build();
+            ec2.attachNetworkInterface(attachRequest);
+        });
+        return eniTracker.await(eniId, ni -> ni.status() == NetworkInterfaceStatus.IN_USE, MAX_ENI_OP_WAIT_MILLIS);
     }
 
-    private void waitWhileEni(String eniId, Function<NetworkInterface, Boolean> predicate, String message, long maxWait) throws TimeoutException {
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
         try {
-            Ec2Client ec2 = Ec2Client.builder().build();
-            DescribeNetworkInterfacesRequest describeInterfaces = DescribeNetworkInterfacesRequest.builder().
-                    networkInterfaceIds(eniId).build();
-
-            DescribeNetworkInterfacesResponse netInterfacesDescription = ec2.describeNetworkInterfaces(describeInterfaces);
-            NetworkInterface ni = Iterables.getOnlyElement(netInterfacesDescription.networkInterfaces());
-
-            if (!predicate.apply(ni)) {
-                System.out.println("Wait not required. Exiting: " + ni.status());
-                return;
-            }
-
-            long startedWaiting = System.currentTimeMillis();
-            while (predicate.apply(ni)) {
-                if ((System.currentTimeMillis() - startedWaiting) > maxWait) {
-                    throw new TimeoutException("Operation [" + message + "] didn't complete for more than " + maxWait + "ms. Aborting wait.");
-                }
-                System.out.println(message + ": " + ni.status());
-                try {
-                    Thread.sleep(500);
-                    DescribeNetworkInterfacesResponse updatedDescription = ec2.describeNetworkInterfaces(describeInterfaces);
-                    ni = Iterables.getOnlyElement(updatedDescription.networkInterfaces());
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-        } catch (Exception e) {
-            Exceptions.capture(e);
+            throw e;
         }
     }
 
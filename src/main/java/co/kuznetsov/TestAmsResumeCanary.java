@@ -1,21 +1,21 @@
 package co.kuznetsov;
 
 
+import com.google.common.collect.ImmutableMap;
 import com.mysql.cj.jdbc.Driver;
 import picocli.CommandLine;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
-import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
-import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
-import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @CommandLine.Command(name = "test-eni-move", mixinStandardHelpOptions = true,
         description = "Test ENI moves")
 public class TestAmsResumeCanary implements Callable<Integer> {
     private static final long MAX_RESUME_WAIT_MILLIS = 90000;
+    private static final String METRICS_NAMESPACE = "ASv2AMSAutoPauseCanary";
     @CommandLine.Option(
             names = {"-e", "--endpoint"},
             description = "Endpoint",
@@ -40,6 +40,17 @@ public class TestAmsResumeCanary implements Callable<Integer> {
             required = true)
     private String password;
 
+    @CommandLine.Option(
+            names = {"-np", "--native-probe"},
+            description = "Probe with the built-in MySQL protocol client instead of mysql-connector-j")
+    private boolean nativeProbe;
+
+    @CommandLine.Mixin
+    private MetricsSinkOptions metricsSinkOptions = new MetricsSinkOptions();
+
+    private MetricsSink metricsSink;
+    private ProbeEngine probeEngine;
+
     @CommandLine.Option(
             names = {"-i", "--idle-seconds"},
             description = "Workload pause",
@@ -57,6 +68,9 @@ public class TestAmsResumeCanary implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
+        metricsSink = metricsSinkOptions.create(METRICS_NAMESPACE, null, null);
+        probeEngine = new ProbeEngine(ExecutionMode.PLATFORM.newExecutor("probe"));
+        Runtime.getRuntime().addShutdownHook(new Thread(metricsSink::close));
         int run = 0;
         while (!Thread.interrupted()) {
             try {
@@ -80,136 +94,69 @@ public class TestAmsResumeCanary implements Callable<Integer> {
 
     private void stayIdle(int inactivitySeconds) {
         for (int i = 0; i < inactivitySeconds; i++) {
-            Threads.sleep(1000);
-            System.out.println("Chilling out for " + i + " seconds...");
+            if (!Threads.sleep(1000)) {
+                return;
+            }
+            Log.info("idle.tick", "seconds", i);
         }
     }
 
     private boolean driveQueriesUntilSuccessful() {
         System.out.println("Probing the endpoint....");
-        AtomicReference<ResumeOutcome> outcomeHfRef = new AtomicReference<>(null);
-
-        Thread connectionThreadHF = new Thread(new HFDoorKnockRunnable(
-                outcomeHfRef,
-                endpoint,
-                port,
-                username,
-                password,
+        CompletableFuture<ResumeOutcome> highRes = probeEngine.probe(ref -> new HFDoorKnockRunnable(
+                ref,
+                newProbe(HFDoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
                 MAX_RESUME_WAIT_MILLIS
-        ));
-
-        connectionThreadHF.start();
+        ), MAX_RESUME_WAIT_MILLIS);
 
         try {
-            connectionThreadHF.join(MAX_RESUME_WAIT_MILLIS);
-            if (connectionThreadHF.isAlive()) {
-                connectionThreadHF.interrupt();
-                return false;
-            }
-            // By no outcomeRef is surely set
-            ResumeOutcome resumeOutcome = outcomeHfRef.get();
-            return resumeOutcome != null && !resumeOutcome.isFailure();
+            return !highRes.get().isFailure();
         } catch (InterruptedException e) {
+            highRes.cancel(true);
             Exceptions.capture(e);
             return false;
+        } catch (ExecutionException e) {
+            Exceptions.capture(e.getCause());
+            return false;
+        }
+    }
+
+    private Probe newProbe(int connectTimeoutMillis) {
+        if (nativeProbe) {
+            return new MySqlWireProbe(endpoint, port, username, password, "", connectTimeoutMillis, true);
         }
+        return new JdbcProbe("mysql", endpoint, port, "", username, password, connectTimeoutMillis, false);
     }
 
     private ResumeStats resume() {
         System.out.println("Starting resume...");
-        AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>(null);
-        AtomicReference<ResumeOutcome> outcomeHfRef = new AtomicReference<>(null);
-
-        Thread connectionThread = new Thread(new DoorKnockRunnable(
-                outcomeRef,
-                endpoint,
-                port,
-                username,
-                password,
+        Instant startedAt = Instant.now();
+        CompletableFuture<ResumeOutcome> normal = probeEngine.probe(ref -> new DoorKnockRunnable(
+                ref,
+                newProbe(DoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
                 MAX_RESUME_WAIT_MILLIS
-        ));
-        Thread connectionThreadHF = new Thread(new HFDoorKnockRunnable(
-                outcomeHfRef,
-                endpoint,
-                port,
-                username,
-                password,
+        ), MAX_RESUME_WAIT_MILLIS);
+        CompletableFuture<ResumeOutcome> highRes = probeEngine.probe(ref -> new HFDoorKnockRunnable(
+                ref,
+                newProbe(HFDoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
                 MAX_RESUME_WAIT_MILLIS
-        ));
-
-        connectionThread.start();
-        connectionThreadHF.start();
+        ), MAX_RESUME_WAIT_MILLIS);
 
         try {
-            connectionThread.join(MAX_RESUME_WAIT_MILLIS);
-            connectionThreadHF.join(MAX_RESUME_WAIT_MILLIS);
-            if (connectionThread.isAlive()) {
-                connectionThread.interrupt();
-                outcomeRef.set(new ResumeOutcome(true, true, MAX_RESUME_WAIT_MILLIS, false));
-            }
-            // By no outcomeRef is surely set
-            return new ResumeStats(outcomeRef.get(), outcomeHfRef.get());
+            List<ResumeOutcome> outcomes = ProbeEngine.allOf(List.of(normal, highRes)).get();
+            return new ResumeStats(startedAt, outcomes.get(0), outcomes.get(1));
         } catch (InterruptedException e) {
-            return new ResumeStats(new ResumeOutcome(false, false, -1, true), null);
+            normal.cancel(true);
+            highRes.cancel(true);
+            return new ResumeStats(startedAt, new ResumeOutcome(false, false, -1, true), null);
         } catch (Exception e) {
             Exceptions.capture(e);
-            return new ResumeStats(new ResumeOutcome(false, true, -1, true), null);
+            return new ResumeStats(startedAt, new ResumeOutcome(false, true, -1, true), null);
         }
     }
 
     private void reportMetrics(ResumeStats outcome) {
-        CloudWatchClient cw = CloudWatchClient.builder().build();
-        var now = Instant.now();
-
-        var clientInterrupt = MetricDatum.builder()
-                .metricName("clientInterrupt")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isClientInterrupt() ? 1 : 0))
-                .build();
-        var success = MetricDatum.builder()
-                .metricName("success")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isFailure() ? 0 : 1))
-                .build();
-        var failure = MetricDatum.builder()
-                .metricName("failure")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isFailure() ? 1 : 0))
-                .build();
-        var connectionDrop = MetricDatum.builder()
-                .metricName("connectionDrop")
-                .unit(StandardUnit.COUNT)
-                .timestamp(now)
-                .value((double) (outcome.isConnectionDrop() ? 1 : 0))
-                .build();
-        var resumeDuration = MetricDatum.builder()
-                .metricName("resumeDuration")
-                .value((double) outcome.getResumeDuration())
-                .timestamp(now)
-                .unit(StandardUnit.MILLISECONDS)
-                .build();
-        var resumeDurationHighRes = MetricDatum.builder()
-                .metricName("resumeDurationHighRes")
-                .value((double) outcome.getResumeDurationHighRes())
-                .timestamp(now)
-                .unit(StandardUnit.MILLISECONDS)
-                .build();
-        var dataRequest = PutMetricDataRequest.builder()
-                .metricData(
-                        connectionDrop,
-                        resumeDuration,
-                        resumeDurationHighRes,
-                        success,
-                        failure,
-                        clientInterrupt
-                ).namespace("ASv2AMSAutoPauseCanary")
-                .build();
-        Threads.retryUntilSuccess(() -> {
-            cw.putMetricData(dataRequest);
-        });
-        System.out.println("Posted metrics to CW: " + outcome);
+        metricsSink.accept(new ResumeEvent(outcome, false, ImmutableMap.of()));
+        System.out.println("Reported metrics: " + outcome);
     }
 }
\ No newline at end of file
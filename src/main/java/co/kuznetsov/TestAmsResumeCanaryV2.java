@@ -6,16 +6,28 @@ import picocli.CommandLine;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
 import software.amazon.awssdk.services.cloudwatchlogs.model.*;
 
+import java.net.URI;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 @CommandLine.Command(name = "test-ams-resumes", mixinStandardHelpOptions = true,
         description = "Test AMS resumes")
 public class TestAmsResumeCanaryV2 implements Callable<Integer> {
+    private static final long TCP_PROBE_RETRY_MILLIS = 5;
+    private static final long READINESS_MIN_INTERVAL_MILLIS = 5000;
+    private static final long READINESS_MAX_INTERVAL_MILLIS = 60000;
+    private static final long DISCOVERY_TIMEOUT_MILLIS = 120000;
+    /**
+     * Default SecondsUntilAutoPause of Aurora Serverless v2, which the canary clusters keep.
+     */
+    private static final long EXPECTED_PAUSE_SECONDS = 300;
+    private static final long PAUSE_POLL_MIN_MILLIS = 20000;
+    private static final long PAUSE_POLL_MAX_MILLIS = 120000;
+    private static final int JOURNAL_RECORDS_PER_WORKER = 64;
 
     @CommandLine.Option(
             names = {"-v", "--version"},
@@ -71,30 +83,128 @@ public class TestAmsResumeCanaryV2 implements Callable<Integer> {
             defaultValue = "360")
     int inactivitySeconds;
 
+    @CommandLine.Option(
+            names = {"-x", "--execution-mode"},
+            description = "Threads to run workers and probes on: ${COMPLETION-CANDIDATES}",
+            defaultValue = "PLATFORM")
+    ExecutionMode executionMode;
+
+    @CommandLine.Option(
+            names = {"-pt", "--phase-timing"},
+            description = "Time DNS, TCP connect, session setup and first query of each probe attempt separately")
+    boolean phaseTiming;
+
+    @CommandLine.Option(
+            names = {"-tcp", "--tcp-probe"},
+            description = "Also record when the endpoint starts accepting TCP connections")
+    boolean tcpProbe;
+
+    @CommandLine.Option(
+            names = {"-np", "--native-probe"},
+            description = "Probe with the built-in MySQL protocol client instead of mysql-connector-j")
+    boolean nativeProbe;
+
+    @CommandLine.Option(
+            names = {"-hfc", "--hf-cadence"},
+            description = "Milliseconds between the starts of high-res probe attempts, 0 to retry as soon as an attempt fails",
+            defaultValue = "" + HFDoorKnockRunnable.DEFAULT_CADENCE_MILLIS)
+    int hfCadenceMillis;
+
+    @CommandLine.Option(
+            names = {"-ho", "--hedge-outstanding"},
+            description = "Keep up to this many high-res probe attempts in flight, a new one every --hf-cadence milliseconds; 0 for one at a time",
+            defaultValue = "0")
+    int hedgeOutstanding;
+
+    @CommandLine.Option(
+            names = {"-ar", "--rds-api-rate"},
+            description = "RDS API calls per second allowed for each action while provisioning clusters",
+            defaultValue = "5")
+    double rdsApiRate;
+
+    @CommandLine.Option(
+            names = {"-mcc", "--max-concurrent-creates"},
+            description = "Clusters being created at the same time",
+            defaultValue = "20")
+    int maxConcurrentCreates;
+
+    @CommandLine.Option(
+            names = {"-pg", "--pause-grace-seconds"},
+            description = "Seconds to wait after the cluster is seen paused before resuming it",
+            defaultValue = "5")
+    int pauseGraceSeconds;
+
+    @CommandLine.Option(
+            names = {"-j", "--journal"},
+            description = "File the state of the workers is journaled to, so that a restart picks up where they stopped",
+            defaultValue = "journal/ams-canary-v2.journal")
+    Path journalPath;
+
+    @CommandLine.Mixin
+    private MetricsSinkOptions metricsSinkOptions = new MetricsSinkOptions();
+
+    private ExecutorService executor;
+    private ProbeEngine probeEngine;
+    private ProvisioningScheduler provisioning;
+    private FleetReadiness readiness;
+    private PauseDetector pauseDetector;
+    private RunJournal journal;
+    private final IdleScheduler idleScheduler = new IdleScheduler();
+    private final ResumeHistograms resumeHistograms = new ResumeHistograms();
+    private MetricsSink metricsSink;
+    private TcpReachabilityProber tcpProber;
+
     public TestAmsResumeCanaryV2() {
     }
 
     public static void main(String... args) throws Exception {
         new Driver();
-        int exitCode = new CommandLine(new TestAmsResumeCanaryV2()).execute(args);
+        int exitCode = new CommandLine(new TestAmsResumeCanaryV2())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(args);
         System.exit(exitCode);
     }
 
     @Override
     public Integer call() throws Exception {
-        ensureLogResourcesExist();
+        if (metricsSinkOptions.uses(MetricsSinkOptions.Type.CLOUDWATCH)) {
+            ensureLogResourcesExist();
+        }
+        metricsSink = metricsSinkOptions.create(getMetricsNamespace(), getLogGroupName(), getLogStreamName());
+        Runtime.getRuntime().addShutdownHook(new Thread(metricsSink::close));
+        if (tcpProbe) {
+            tcpProber = new TcpReachabilityProber(TCP_PROBE_RETRY_MILLIS);
+        }
 
-        List<Thread> threads = new ArrayList<>();
+        executor = executionMode.newExecutor("canary");
+        probeEngine = new ProbeEngine(executor);
+        provisioning = new ProvisioningScheduler(clusters, rdsApiRate, maxConcurrentCreates, metricsSink);
+        readiness = new FleetReadiness(AwsClients.rds(new URI(rdsEndpoint)), "aurora-mysql", "asv2-ams-ap-canary", provisioning,
+                READINESS_MIN_INTERVAL_MILLIS, READINESS_MAX_INTERVAL_MILLIS);
+        readiness.discover(DISCOVERY_TIMEOUT_MILLIS);
+        pauseDetector = new PauseDetector(AwsClients.cloudWatch(), EXPECTED_PAUSE_SECONDS, PAUSE_POLL_MIN_MILLIS,
+                PAUSE_POLL_MAX_MILLIS);
+        journal = RunJournal.open(journalPath, clusters * JOURNAL_RECORDS_PER_WORKER);
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
         for (int i = 0; i < clusters; i++) {
-            Thread t = new Thread(new TestAmsResumeCanaryV2Worker(this, i));
-            threads.add(t);
-            t.start();
+            executor.submit(new TestAmsResumeCanaryV2Worker(this, i));
         }
 
         Instant started = Instant.now();
         while (!Thread.interrupted()) {
             System.out.println("Running " + clusters + " canary workers for " +
-                    Duration.between(started, Instant.now()).truncatedTo(ChronoUnit.SECONDS));
+                    Duration.between(started, Instant.now()).truncatedTo(ChronoUnit.SECONDS) +
+                    " on " + executionMode + " threads (" + JvmStats.snapshot() + ", " + ProbeGauges.describe() + "), " +
+                    idleScheduler.getIdleCount() + " idle, next due at " + idleScheduler.getNextDue() + ", " +
+                    metricsSink.describe() + ", AWS clients " + AwsClients.describe());
+            System.out.println(resumeHistograms.dump());
+            System.out.println("Exceptions: " + Exceptions.describe());
+            System.out.println("Log: " + Log.describe());
+            System.out.println("Retries: " + Retries.describe());
+            System.out.println("Provisioning: " + provisioning.describe());
+            System.out.println("Readiness: " + readiness.describe());
+            System.out.println("Pause detector: " + pauseDetector.describe());
+            System.out.println("Journal: " + journal.describe());
             Threads.sleep(10000);
         }
 
@@ -102,36 +212,75 @@ public class TestAmsResumeCanaryV2 implements Callable<Integer> {
     }
 
     private void ensureLogResourcesExist() {
-        try (CloudWatchLogsClient cwl = CloudWatchLogsClient.builder().build(); ) {
-            Threads.retryUntilSuccess(() -> {
-                DescribeLogGroupsRequest describeLogGroup = DescribeLogGroupsRequest.builder()
-                        .logGroupNamePattern(getLogGroupName())
+        CloudWatchLogsClient cwl = AwsClients.cloudWatchLogs();
+        Retries.run("logs.EnsureLogGroup", RetryPolicy.MUTATE, () -> {
+            DescribeLogGroupsRequest describeLogGroup = DescribeLogGroupsRequest.builder()
+                    .logGroupNamePattern(getLogGroupName())
+                    .build();
+            DescribeLogGroupsResponse response = cwl.describeLogGroups(describeLogGroup);
+            if (response.logGroups().isEmpty()) {
+                CreateLogGroupRequest createLogGroup = CreateLogGroupRequest.builder()
+                        .logGroupName(getLogGroupName())
                         .build();
-                DescribeLogGroupsResponse response = cwl.describeLogGroups(describeLogGroup);
-                if (response.logGroups().isEmpty()) {
-                    CreateLogGroupRequest createLogGroup = CreateLogGroupRequest.builder()
-                            .logGroupName(getLogGroupName())
-                            .build();
-                    cwl.createLogGroup(createLogGroup);
-                    System.out.println("Created LogGroup: " + getLogGroupName());
-                }
-            });
-            Threads.retryUntilSuccess(() -> {
-                DescribeLogStreamsRequest describeLogStreams = DescribeLogStreamsRequest.builder()
+                cwl.createLogGroup(createLogGroup);
+                System.out.println("Created LogGroup: " + getLogGroupName());
+            }
+        });
+        Retries.run("logs.EnsureLogStream", RetryPolicy.MUTATE, () -> {
+            DescribeLogStreamsRequest describeLogStreams = DescribeLogStreamsRequest.builder()
+                    .logGroupName(getLogGroupName())
+                    .logStreamNamePrefix(getLogStreamName())
+                    .build();
+            DescribeLogStreamsResponse response = cwl.describeLogStreams(describeLogStreams);
+            if (response.logStreams().isEmpty()) {
+                CreateLogStreamRequest createLogStream = CreateLogStreamRequest.builder()
                         .logGroupName(getLogGroupName())
-                        .logStreamNamePrefix(getLogStreamName())
+                        .logStreamName(getLogStreamName())
                         .build();
-                DescribeLogStreamsResponse response = cwl.describeLogStreams(describeLogStreams);
-                if (response.logStreams().isEmpty()) {
-                    CreateLogStreamRequest createLogStream = CreateLogStreamRequest.builder()
-                            .logGroupName(getLogGroupName())
-                            .logStreamName(getLogStreamName())
-                            .build();
-                    cwl.createLogStream(createLogStream);
-                    System.out.println("Created LogStream: " + getLogStreamName());
-                }
-            });
-        }
+                cwl.createLogStream(createLogStream);
+                System.out.println("Created LogStream: " + getLogStreamName());
+            }
+        });
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public ProbeEngine getProbeEngine() {
+        return probeEngine;
+    }
+
+    public ProvisioningScheduler getProvisioning() {
+        return provisioning;
+    }
+
+    public FleetReadiness getReadiness() {
+        return readiness;
+    }
+
+    public PauseDetector getPauseDetector() {
+        return pauseDetector;
+    }
+
+    public RunJournal getJournal() {
+        return journal;
+    }
+
+    public ResumeHistograms getResumeHistograms() {
+        return resumeHistograms;
+    }
+
+    public IdleScheduler getIdleScheduler() {
+        return idleScheduler;
+    }
+
+    public TcpReachabilityProber getTcpProber() {
+        return tcpProber;
+    }
+
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
     }
 
     protected String getLogGroupName() {
@@ -1,13 +1,7 @@
 package co.kuznetsov;
 
+import com.google.common.collect.ImmutableMap;
 import org.apache.commons.lang.math.RandomUtils;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
-import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
-import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
-import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
-import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
-import software.amazon.awssdk.services.cloudwatchlogs.model.*;
 import software.amazon.awssdk.services.rds.RdsClient;
 import software.amazon.awssdk.services.rds.model.CreateDbClusterRequest;
 import software.amazon.awssdk.services.rds.model.CreateDbClusterResponse;
@@ -24,84 +18,199 @@ import software.amazon.awssdk.services.rds.model.Tag;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class TestAmsResumeCanaryV2Worker implements Runnable {
     private static final long MAX_RESUME_WAIT_MILLIS = 90000;
+    private static final long MAX_AVAILABLE_WAIT_MILLIS = 60 * 60 * 1000;
+    /**
+     * Extra idle time allowed for the pause to show up in CloudWatch before resuming without a confirmed pause.
+     */
+    private static final long PAUSE_DETECTION_SLACK_SECONDS = 300;
 
     private final TestAmsResumeCanaryV2 canary;
     private final int workerId;
+    private final AtomicReference<DBCluster>   clusterRef = new AtomicReference<>();
+    private final AtomicReference<DBInstance> instanceRef = new AtomicReference<>();
+    private int run = 0;
+    /**
+     * Where the worker stopped before the canary was restarted, until the first cycle has taken it into account.
+     */
+    private RunJournal.WorkerState recovered;
 
     public TestAmsResumeCanaryV2Worker(TestAmsResumeCanaryV2 testAmsResumeCanaryV2, int workerId) {
         this.canary = testAmsResumeCanaryV2;
         this.workerId = workerId;
+        this.recovered = canary.getJournal().getState(workerId);
+        if (recovered != null) {
+            this.run = recovered.getRun() + 1;
+        }
     }
 
     @Override
     public void run() {
-        AtomicReference<DBCluster>   clusterRef = new AtomicReference<>();
-        AtomicReference<DBInstance> instanceRef = new AtomicReference<>();
-
-        while (!Thread.interrupted()) {
-            if (clusterRef.get() == null && instanceRef.get() == null) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        if (clusterRef.get() == null && instanceRef.get() == null) {
+            try {
                 provisionACluster(clusterRef, instanceRef);
+            } catch (RuntimeException e) {
+                Exceptions.capture(e);
+                clusterRef.set(null);
+                instanceRef.set(null);
+                if (Threads.sleep(1000)) {
+                    canary.getExecutor().execute(this);
+                }
+                return;
             }
-
-            doAutoPausing(clusterRef, instanceRef);
         }
+
+        doAutoPausing(clusterRef, instanceRef);
     }
 
+    /**
+     * Runs one auto-pausing cycle up to the idle period. The cluster is then handed over to the shared idle
+     * scheduler and the resume continues on the canary executor once the idle period is over. A worker that was
+     * restarted while its cluster idled goes straight back to idling for what is left of the period.
+     */
     private void doAutoPausing(AtomicReference<DBCluster> clusterRef, AtomicReference<DBInstance> instanceRef) {
+        if (!followDrift(clusterRef, instanceRef)) {
+            canary.getExecutor().execute(this);
+            return;
+        }
         String endpoint = clusterRef.get().endpoint();
         int port = clusterRef.get().port();
 
         String instanceId = instanceRef.get().dbInstanceIdentifier();
 
-        int run = 0;
-        while (!Thread.interrupted()) {
-            try {
-                System.out.println("Run [" + instanceId + "]: " + (run++));
-                boolean ready = driveQueriesUntilSuccessful(instanceRef, endpoint, port);
-                if (ready) {
-                    System.out.println("Success [" + instanceId + "]");
-                    stayIdle(instanceId, canary.inactivitySeconds + rnd(120));
-                    ResumeStats stats = resume(instanceRef, endpoint, port);
-                    reportMetrics(instanceRef, stats);
-                } else {
-                    System.out.println("Not ready in time [" + instanceId + "]. Starting over.");
-                }
-            } catch (Exception e) {
-                Exceptions.capture(e);
-                Threads.sleep(1000);
+        RunJournal.WorkerState recovering = recovered;
+        recovered = null;
+        if (recovering != null && recovering.isIdle()) {
+            Log.info("run.recovered", "instanceId", instanceId, "run", recovering.getRun(),
+                    "idleSince", recovering.getIdleSince());
+            idle(instanceRef, endpoint, port, recovering.getRun(), recovering.getIdleSince(), recovering.getMaxIdleSeconds());
+            return;
+        }
+
+        try {
+            int cycle = run++;
+            Log.info("run.start", "instanceId", instanceId, "run", cycle);
+            boolean ready = driveQueriesUntilSuccessful(instanceRef, endpoint, port);
+            if (ready) {
+                Log.info("run.ready", "instanceId", instanceId);
+                canary.getJournal().append(workerId, cycle, RunJournal.Transition.PROBED_READY);
+                Instant idleSince = Instant.now();
+                long maxIdleSeconds = canary.inactivitySeconds + PAUSE_DETECTION_SLACK_SECONDS + rnd(120);
+                canary.getJournal().append(workerId, cycle, RunJournal.Transition.IDLE_SINCE, idleSince, maxIdleSeconds);
+                idle(instanceRef, endpoint, port, cycle, idleSince, maxIdleSeconds);
+                return;
+            } else {
+                Log.warn("run.notReady", "instanceId", instanceId);
+            }
+        } catch (Exception e) {
+            Exceptions.capture(e);
+            if (!Threads.sleep(1000)) {
+                return;
             }
         }
+        canary.getExecutor().execute(this);
     }
 
-    private int rnd(int max) {
-        return RandomUtils.nextInt(max);
+    private void idle(AtomicReference<DBInstance> instanceRef, String endpoint, int port, int cycle, Instant idleSince,
+                      long maxIdleSeconds) {
+        String instanceId = instanceRef.get().dbInstanceIdentifier();
+        canary.getIdleScheduler()
+                .idleUntilPaused(instanceId, idleSince, canary.getPauseDetector(), canary.pauseGraceSeconds, maxIdleSeconds)
+                .thenAcceptAsync(pausedAt -> resumeAndReport(instanceRef, endpoint, port, cycle,
+                        pausedAt == null ? null : Math.max(0, Duration.between(idleSince, pausedAt).toMillis())),
+                        canary.getExecutor());
+    }
+
+    /**
+     * Applies what the fleet poller saw change about the worker's instance since the last cycle.
+     *
+     * @return false if the cluster or instance is gone and has to be provisioned again
+     */
+    private boolean followDrift(AtomicReference<DBCluster> clusterRef, AtomicReference<DBInstance> instanceRef) {
+        String instanceId = instanceRef.get().dbInstanceIdentifier();
+        String drift = canary.getReadiness().takeDrift(instanceId);
+        if (drift == null) {
+            return true;
+        }
+        if (FleetReadiness.DELETED.equals(drift)) {
+            Log.warn("run.reprovision", "instanceId", instanceId);
+            clusterRef.set(null);
+            instanceRef.set(null);
+            return false;
+        }
+        DBInstance instance = canary.getReadiness().getInstance(instanceId);
+        DBCluster cluster = instance == null ? null : canary.getReadiness().getCluster(instance.dbClusterIdentifier());
+        if (instance != null && cluster != null) {
+            instanceRef.set(instance);
+            clusterRef.set(cluster);
+        }
+        return true;
     }
 
-    private void stayIdle(String instanceId, int inactivitySeconds) {
-        for (int i = 0; i < inactivitySeconds; i++) {
-            Threads.sleep(1000);
-            System.out.println("Instance [" + instanceId + "] is chilling out for " + i + " seconds...");
+    /**
+     * @param autoPauseLatencyMillis how long the instance took to pause after the workload stopped, null if unknown
+     */
+    private void resumeAndReport(AtomicReference<DBInstance> instanceRef, String endpoint, int port, int cycle,
+                                 Long autoPauseLatencyMillis) {
+        try {
+            canary.getJournal().append(workerId, cycle, RunJournal.Transition.RESUME_STARTED);
+            ResumeStats stats = resume(instanceRef, endpoint, port, autoPauseLatencyMillis);
+            reportMetrics(instanceRef, stats);
+        } catch (Exception e) {
+            Exceptions.capture(e);
+            if (!Threads.sleep(1000)) {
+                return;
+            }
         }
+        canary.getExecutor().execute(this);
+    }
+
+    private int rnd(int max) {
+        return RandomUtils.nextInt(max);
     }
 
+    /**
+     * Finds or creates the worker's cluster and instance and waits until the instance is available, pacing RDS calls
+     * through the canary's {@link ProvisioningScheduler}.
+     */
     private void provisionACluster(AtomicReference<DBCluster> clusterRef, AtomicReference<DBInstance> instanceRef) {
-        try (RdsClient rds = RdsClient.builder().endpointOverride(new URI(canary.rdsEndpoint)).build()) {
+        ProvisioningScheduler provisioning = canary.getProvisioning();
+        boolean creating = false;
+        try {
+            RdsClient rds = AwsClients.rds(new URI(canary.rdsEndpoint));
             String suffix = String.format("%03d", workerId);
             String clusterIdentifier = "persist-ams-ap-canary-c-" + suffix;
             String instanceIdentifier = "persist-ams-ap-canary-i-" + suffix;
 
-            DBCluster existingCluster = describeDbCluster(rds, clusterIdentifier);
+            DBCluster existingCluster = canary.getReadiness().getCluster(clusterIdentifier);
+            if (existingCluster == null) {
+                existingCluster = describeDbCluster(rds, clusterIdentifier, ProvisioningScheduler.Priority.DISCOVERY);
+            }
+            ProvisioningScheduler.Priority priority = existingCluster != null
+                    ? ProvisioningScheduler.Priority.EXISTING
+                    : ProvisioningScheduler.Priority.NEW;
             if (existingCluster != null) {
                 clusterRef.set(existingCluster);
             } else {
-                Threads.retryUntilSuccess(() -> {
+                recovered = null;
+                provisioning.beginCreate();
+                creating = true;
+                Retries.run("rds.CreateDBCluster", RetryPolicy.MUTATE, () -> {
+                    provisioning.acquire(ProvisioningScheduler.Action.CREATE_CLUSTER, priority);
                     CreateDbClusterRequest createDbClusterRequest = CreateDbClusterRequest.builder()
                             .tags(Tag.builder().key("asv2-ams-ap-canary").value("true").build())
                             .engine("aurora-mysql")
@@ -122,11 +231,20 @@ public class TestAmsResumeCanaryV2Worker implements Runnable {
                 });
             }
 
-            DBInstance existingInstance = describeDbInstance(rds, instanceIdentifier);
+            DBInstance existingInstance = canary.getReadiness().getInstance(instanceIdentifier);
+            if (existingInstance == null) {
+                existingInstance = describeDbInstance(rds, instanceIdentifier, priority);
+            }
             if (existingInstance != null) {
                 instanceRef.set(existingInstance);
             } else {
-                Threads.retryUntilSuccess(() -> {
+                recovered = null;
+                if (!creating) {
+                    provisioning.beginCreate();
+                    creating = true;
+                }
+                Retries.run("rds.CreateDBInstance", RetryPolicy.MUTATE, () -> {
+                    provisioning.acquire(ProvisioningScheduler.Action.CREATE_INSTANCE, priority);
                     CreateDbInstanceRequest createDbInstanceRequest = CreateDbInstanceRequest.builder()
                             .dbInstanceIdentifier(instanceIdentifier)
                             .dbClusterIdentifier(clusterIdentifier)
@@ -139,19 +257,41 @@ public class TestAmsResumeCanaryV2Worker implements Runnable {
                 });
             }
 
-            System.out.println("Waiting for instance to be ready: " + instanceIdentifier);
-            rds.waiter().waitUntilDBInstanceAvailable(DescribeDbInstancesRequest.builder()
-                        .dbInstanceIdentifier(instanceIdentifier)
-                        .build());
+            Log.info("instance.waitAvailable", "instanceId", instanceIdentifier);
+            instanceRef.set(waitUntilAvailable(instanceIdentifier, existingInstance));
+            provisioning.ready(instanceIdentifier);
+            canary.getReadiness().watch(instanceIdentifier);
+            canary.getJournal().append(workerId, run, RunJournal.Transition.PROVISIONED);
         } catch (URISyntaxException e) {
             Exceptions.capture(e);
             System.exit(-1);
+        } finally {
+            if (creating) {
+                provisioning.endCreate();
+            }
+        }
+    }
+
+    private DBInstance waitUntilAvailable(String instanceIdentifier, DBInstance instance) {
+        if (instance != null && FleetReadiness.AVAILABLE.equals(instance.dbInstanceStatus())) {
+            return instance;
+        }
+        try {
+            return canary.getReadiness().awaitAvailable(instanceIdentifier).get(MAX_AVAILABLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for " + instanceIdentifier);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(instanceIdentifier + " not available after " + MAX_AVAILABLE_WAIT_MILLIS + "ms");
         }
     }
 
-    private DBInstance describeDbInstance(RdsClient rds, String instanceIdentifier) {
+    private DBInstance describeDbInstance(RdsClient rds, String instanceIdentifier, ProvisioningScheduler.Priority priority) {
         AtomicReference<DBInstance> ref = new AtomicReference<>();
-        Threads.retryUntilSuccess(() -> {
+        Retries.run("rds.DescribeDBInstances", RetryPolicy.DESCRIBE, () -> {
+            canary.getProvisioning().acquire(ProvisioningScheduler.Action.DESCRIBE_INSTANCES, priority);
             try {
                 var request = DescribeDbInstancesRequest.builder()
                         .dbInstanceIdentifier(instanceIdentifier)
@@ -167,9 +307,10 @@ public class TestAmsResumeCanaryV2Worker implements Runnable {
         return ref.get();
     }
 
-    private DBCluster describeDbCluster(RdsClient rds, String clusterIdentifier) {
+    private DBCluster describeDbCluster(RdsClient rds, String clusterIdentifier, ProvisioningScheduler.Priority priority) {
         AtomicReference<DBCluster> ref = new AtomicReference<>();
-        Threads.retryUntilSuccess(() -> {
+        Retries.run("rds.DescribeDBClusters", RetryPolicy.DESCRIBE, () -> {
+            canary.getProvisioning().acquire(ProvisioningScheduler.Action.DESCRIBE_CLUSTERS, priority);
             try {
                 var request = DescribeDbClustersRequest.builder()
                         .dbClusterIdentifier(clusterIdentifier)
@@ -186,232 +327,75 @@ public class TestAmsResumeCanaryV2Worker implements Runnable {
     }
 
     private boolean driveQueriesUntilSuccessful(AtomicReference<DBInstance> instanceRef, String endpoint, int port) {
-        System.out.println("Probing the endpoint [" + instanceRef.get().dbInstanceIdentifier() + "]");
-        AtomicReference<ResumeOutcome> outcomeHfRef = new AtomicReference<>(null);
-
-        Thread connectionThreadHF = new Thread(new HFDoorKnockRunnable(
-                outcomeHfRef,
-                endpoint,
-                port,
-                canary.username,
-                canary.password,
-                MAX_RESUME_WAIT_MILLIS
-        ));
-
-        connectionThreadHF.start();
-
+        String instanceId = instanceRef.get().dbInstanceIdentifier();
+        Log.info("probe.start", "instanceId", instanceId);
+        canary.getProvisioning().probing(instanceId);
+        CompletableFuture<ResumeOutcome> highRes = canary.getProbeEngine()
+                .probe(ref -> newHighResKnock(ref, endpoint, port, instanceId), MAX_RESUME_WAIT_MILLIS);
         try {
-            connectionThreadHF.join(MAX_RESUME_WAIT_MILLIS);
-            if (connectionThreadHF.isAlive()) {
-                connectionThreadHF.interrupt();
-                return false;
-            }
-            // By no outcomeRef is surely set
-            ResumeOutcome resumeOutcome = outcomeHfRef.get();
-            return resumeOutcome != null && !resumeOutcome.isFailure();
+            return !highRes.get().isFailure();
         } catch (InterruptedException e) {
+            highRes.cancel(true);
             Exceptions.capture(e);
             return false;
+        } catch (ExecutionException e) {
+            Exceptions.capture(e.getCause());
+            return false;
         }
     }
 
-    private ResumeStats resume(AtomicReference<DBInstance> instanceRef, String endpoint, int port) {
-        System.out.println("Starting resume [" + instanceRef.get().dbInstanceIdentifier() + "]...");
-        AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>(null);
-        AtomicReference<ResumeOutcome> outcomeHfRef = new AtomicReference<>(null);
-
-        Thread connectionThread = new Thread(new DoorKnockRunnable(
-                outcomeRef,
-                endpoint,
-                port,
-                canary.username,
-                canary.password,
-                MAX_RESUME_WAIT_MILLIS
-        ));
-        Thread connectionThreadHF = new Thread(new HFDoorKnockRunnable(
-                outcomeHfRef,
-                endpoint,
-                port,
-                canary.username,
-                canary.password,
-                MAX_RESUME_WAIT_MILLIS
-        ));
-
-        connectionThread.start();
-        connectionThreadHF.start();
+    private ResumeStats resume(AtomicReference<DBInstance> instanceRef, String endpoint, int port, Long autoPauseLatencyMillis) {
+        String instanceId = instanceRef.get().dbInstanceIdentifier();
+        Log.info("resume.start", "instanceId", instanceId);
+        Instant startedAt = Instant.now();
+        CompletableFuture<TcpReachability> tcp = canary.getTcpProber() != null
+                ? canary.getTcpProber().watch(endpoint, port, MAX_RESUME_WAIT_MILLIS)
+                : CompletableFuture.completedFuture(null);
+        ProbeEngine engine = canary.getProbeEngine();
+        CompletableFuture<ResumeOutcome> normal = engine.probe(ref -> new DoorKnockRunnable(
+                ref,
+                newProbe(endpoint, port, DoorKnockRunnable.CONNECT_TIMEOUT_MILLIS),
+                MAX_RESUME_WAIT_MILLIS,
+                instanceId
+        ), MAX_RESUME_WAIT_MILLIS);
+        CompletableFuture<ResumeOutcome> highRes = engine.probe(ref -> newHighResKnock(ref, endpoint, port, instanceId), MAX_RESUME_WAIT_MILLIS);
 
         try {
-            connectionThread.join(MAX_RESUME_WAIT_MILLIS);
-            connectionThreadHF.join(MAX_RESUME_WAIT_MILLIS);
-            if (connectionThread.isAlive()) {
-                connectionThread.interrupt();
-                outcomeRef.set(new ResumeOutcome(true, true, MAX_RESUME_WAIT_MILLIS, false));
-            }
-            // By no outcomeRef is surely set
-            return new ResumeStats(outcomeRef.get(), outcomeHfRef.get());
+            List<ResumeOutcome> outcomes = ProbeEngine.allOf(List.of(normal, highRes)).get();
+            return new ResumeStats(startedAt, outcomes.get(0), outcomes.get(1), tcp.getNow(null), autoPauseLatencyMillis);
         } catch (InterruptedException e) {
-            return new ResumeStats(new ResumeOutcome(false, false, -1, true), null);
+            normal.cancel(true);
+            highRes.cancel(true);
+            return new ResumeStats(startedAt, new ResumeOutcome(false, false, -1, true), null);
         } catch (Exception e) {
-            System.out.println("Failure to connect to " + endpoint + ":" + port);
+            Log.warn("resume.connectFailure", "instanceId", instanceId, "endpoint", endpoint + ":" + port);
             Exceptions.capture(e);
-            return new ResumeStats(new ResumeOutcome(false, true, -1, true), null);
+            return new ResumeStats(startedAt, new ResumeOutcome(false, true, -1, true), null);
         }
     }
 
-    private void reportMetrics(AtomicReference<DBInstance> instanceRef, ResumeStats outcome) {
-        try (CloudWatchClient cw = CloudWatchClient.builder().build();
-             CloudWatchLogsClient cwl = CloudWatchLogsClient.builder().build(); ) {
-            var now = Instant.now();
-
-            var clientInterrupt = MetricDatum.builder()
-                    .metricName("clientInterrupt")
-                    .unit(StandardUnit.COUNT)
-                    .timestamp(now)
-                    .value((double) (outcome.isClientInterrupt() ? 1 : 0))
-                    .build();
-            var success = MetricDatum.builder()
-                    .metricName("success")
-                    .unit(StandardUnit.COUNT)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 0 : outcome.didSleep() ? 1 : 0))
-                    .build();
-            var noSleep = MetricDatum.builder()
-                    .metricName("noSleep")
-                    .unit(StandardUnit.COUNT)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 0 : outcome.didSleep() ? 0 : 1))
-                    .build();
-            var failure = MetricDatum.builder()
-                    .metricName("failure")
-                    .unit(StandardUnit.COUNT)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 1 : 0))
-                    .build();
-            var connectionDrop = MetricDatum.builder()
-                    .metricName("connectionDrop")
-                    .unit(StandardUnit.COUNT)
-                    .timestamp(now)
-                    .value((double) (outcome.isConnectionDrop() ? 1 : 0))
-                    .build();
-            var resumeDuration = MetricDatum.builder()
-                    .metricName("resumeDuration")
-                    .value((double) outcome.getResumeDuration())
-                    .timestamp(now)
-                    .unit(StandardUnit.MILLISECONDS)
-                    .build();
-            var resumeDurationHighRes = MetricDatum.builder()
-                    .metricName("resumeDurationHighRes")
-                    .value((double) outcome.getResumeDurationHighRes())
-                    .timestamp(now)
-                    .unit(StandardUnit.MILLISECONDS)
-                    .build();
-
-            Dimension instanceDimension = Dimension.builder()
-                    .name("instanceId")
-                    .value(instanceRef.get().dbInstanceIdentifier())
-                    .build();
-
-            var clientInterruptInstance = MetricDatum.builder()
-                    .metricName("clientInterrupt")
-                    .unit(StandardUnit.COUNT)
-                    .dimensions(instanceDimension)
-                    .timestamp(now)
-                    .value((double) (outcome.isClientInterrupt() ? 1 : 0))
-                    .build();
-            var successInstance = MetricDatum.builder()
-                    .metricName("success")
-                    .unit(StandardUnit.COUNT)
-                    .dimensions(instanceDimension)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 0 : outcome.didSleep() ? 1 : 0))
-                    .build();
-            var noSleepInstance = MetricDatum.builder()
-                    .metricName("noSleep")
-                    .unit(StandardUnit.COUNT)
-                    .dimensions(instanceDimension)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 0 : outcome.didSleep() ? 0 : 1))
-                    .build();
-            var failureInstance = MetricDatum.builder()
-                    .metricName("failure")
-                    .unit(StandardUnit.COUNT)
-                    .dimensions(instanceDimension)
-                    .timestamp(now)
-                    .value((double) (outcome.isFailure() ? 1 : 0))
-                    .build();
-            var connectionDropInstance = MetricDatum.builder()
-                    .metricName("connectionDrop")
-                    .unit(StandardUnit.COUNT)
-                    .dimensions(instanceDimension)
-                    .timestamp(now)
-                    .value((double) (outcome.isConnectionDrop() ? 1 : 0))
-                    .build();
-            var resumeDurationInstance = MetricDatum.builder()
-                    .metricName("resumeDuration")
-                    .value((double) outcome.getResumeDuration())
-                    .timestamp(now)
-                    .unit(StandardUnit.MILLISECONDS)
-                    .dimensions(instanceDimension)
-                    .build();
-            var resumeDurationHighResInstance = MetricDatum.builder()
-                    .metricName("resumeDurationHighRes")
-                    .value((double) outcome.getResumeDurationHighRes())
-                    .timestamp(now)
-                    .dimensions(instanceDimension)
-                    .unit(StandardUnit.MILLISECONDS)
-                    .build();
-
-            var dataRequest = PutMetricDataRequest.builder()
-                    .metricData(
-                            connectionDrop,
-                            connectionDropInstance,
-                            resumeDuration,
-                            resumeDurationInstance,
-                            resumeDurationHighRes,
-                            resumeDurationHighResInstance,
-                            success,
-                            successInstance,
-                            noSleep,
-                            noSleepInstance,
-                            failure,
-                            failureInstance,
-                            clientInterrupt,
-                            clientInterruptInstance
-                    ).namespace(canary.getMetricsNamespace())
-                    .build();
-
-            Threads.retryUntilSuccess(() -> {
-                cw.putMetricData(dataRequest);
-            });
-
-            List<InputLogEvent> inputLogEvents = new ArrayList<>();
-            inputLogEvents.add(InputLogEvent.builder()
-                            .message(String.format(
-                                    "Resume for instanceId: %s. Outcome: [success=%b, noSleep=%b, clientInterrupt=%b, connectionDrop=%b, duration=%d, durationHighRes=%d]",
-                                    instanceRef.get().dbInstanceIdentifier(),
-                                    !outcome.isFailure() && outcome.didSleep(),
-                                    !outcome.isFailure() && !outcome.didSleep(),
-                                    outcome.isClientInterrupt(),
-                                    outcome.isConnectionDrop(),
-                                    outcome.getResumeDuration(),
-                                    outcome.getResumeDurationHighRes()
-                             ))
-                            .timestamp(now.toEpochMilli())
-                    .build());
-
-            Threads.retryUntilSuccess(() -> {
-                cwl.putLogEvents(
-                    PutLogEventsRequest.builder()
-                            .logGroupName(canary.getLogGroupName())
-                            .logStreamName(canary.getLogStreamName())
-                            .logEvents(inputLogEvents)
-                            .build()
-
-                );
-            });
+    private ProbeRunnable newHighResKnock(AtomicReference<ResumeOutcome> outcomeHfRef, String endpoint, int port, String instanceId) {
+        Probe probe = newProbe(endpoint, port, HFDoorKnockRunnable.CONNECT_TIMEOUT_MILLIS);
+        if (canary.hedgeOutstanding > 0) {
+            return new HedgedDoorKnockRunnable(outcomeHfRef, probe, MAX_RESUME_WAIT_MILLIS, instanceId,
+                    canary.hfCadenceMillis, canary.hedgeOutstanding, canary.getExecutor());
+        }
+        return new HFDoorKnockRunnable(outcomeHfRef, probe, MAX_RESUME_WAIT_MILLIS, instanceId, canary.hfCadenceMillis);
+    }
 
-            System.out.println("Posted metrics to CW: " + outcome);
+    private Probe newProbe(String endpoint, int port, int connectTimeoutMillis) {
+        if (canary.nativeProbe) {
+            return new MySqlWireProbe(endpoint, port, canary.username, canary.password, "", connectTimeoutMillis, true);
         }
+        return new JdbcProbe("mysql", endpoint, port, "", canary.username, canary.password, connectTimeoutMillis, canary.phaseTiming);
+    }
+
+    private void reportMetrics(AtomicReference<DBInstance> instanceRef, ResumeStats outcome) {
+        var event = new ResumeEvent(outcome, true, ImmutableMap.of(
+                "instanceId", instanceRef.get().dbInstanceIdentifier()));
+        canary.getMetricsSink().accept(event);
+        canary.getResumeHistograms().record(canary.version, instanceRef.get().dbInstanceIdentifier(), outcome);
+        Log.info("resume.reported", "instanceId", instanceRef.get().dbInstanceIdentifier(), "outcome", outcome);
     }
 
 }
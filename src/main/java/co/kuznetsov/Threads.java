@@ -1,5 +1,10 @@
 package co.kuznetsov;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 public class Threads {
 
     private static final long THREAD_WAIT_FOR_INTERRUPT_MILLIS = 5000;
@@ -7,24 +12,34 @@ public class Threads {
     private Threads() {
     }
 
-    public static void sleep(long millis) {
+    /**
+     * Sleeps, keeping the interrupt flag set when interrupted so that callers further up can still see it.
+     *
+     * @return false if the thread was interrupted
+     */
+    public static boolean sleep(long millis) {
         try {
             Thread.sleep(millis);
+            return true;
         } catch (InterruptedException e) {
-            Exceptions.capture(e);
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
-    public static void retryUntilSuccess(Runnable run) {
-        boolean success = false;
-        while (!success) {
-            try {
-                run.run();
-                success = true;
-            } catch (Exception t) {
-                Exceptions.capture(t, "Failed to run the action");
-                Threads.sleep(1000);
-            }
+    /**
+     * Waits for a task to finish, like {@link Thread#join(long)} does for a thread.
+     *
+     * @return false if the task is still running after the timeout
+     */
+    public static boolean await(Future<?> future, long millis) throws InterruptedException {
+        try {
+            future.get(millis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            Exceptions.capture(e.getCause());
         }
+        return true;
     }
 }
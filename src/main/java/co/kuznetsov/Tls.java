@@ -0,0 +1,47 @@
+package co.kuznetsov;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Upgrades an already connected probe socket to TLS without verifying the server certificate, the way the drivers
+ * do in their default "prefer" SSL modes.
+ */
+public class Tls {
+
+    private Tls() {
+    }
+
+    public static SSLSocket handshake(Socket socket, String host, int port) throws IOException {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{new NonValidatingTrustManager()}, null);
+            SSLSocket sslSocket = (SSLSocket) context.getSocketFactory().createSocket(socket, host, port, true);
+            sslSocket.startHandshake();
+            return sslSocket;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class NonValidatingTrustManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package co.kuznetsov;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket holding up to {@code capacity} tokens and refilled at a fixed rate. The retry budget is one, where every
+ * retry takes a token and first attempts are free, so it only caps the extra load failures add on top of normal
+ * traffic; provisioning rate-limits each RDS API action with another.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(int capacity, double tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @return 0 if a token was taken, otherwise milliseconds until the next one is due
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) Math.ceil((1 - tokens) / tokensPerNano)));
+    }
+}
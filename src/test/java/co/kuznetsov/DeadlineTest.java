@@ -0,0 +1,41 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.concurrent.TimeUnit;
+
+public class DeadlineTest extends TestCase {
+    public DeadlineTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(DeadlineTest.class);
+    }
+
+    public void testSleepWakesUpOnCancel() throws Exception {
+        Deadline deadline = Deadline.after(30000);
+        Thread canceller = new Thread(() -> {
+            Threads.sleep(50);
+            deadline.cancel();
+        });
+        canceller.start();
+        long started = System.nanoTime();
+        assertFalse(deadline.sleep(30000));
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(deadline.isCancelled());
+        canceller.join();
+    }
+
+    public void testSleepKeepsInterruptFlag() {
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(Threads.sleep(1000));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
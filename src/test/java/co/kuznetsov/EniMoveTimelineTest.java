@@ -0,0 +1,63 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.time.Instant;
+import java.util.Map;
+
+public class EniMoveTimelineTest extends TestCase {
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    public EniMoveTimelineTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(EniMoveTimelineTest.class);
+    }
+
+    public void testPhasesAgainstHighResFirstQuery() {
+        EniMoveTimeline timeline = new EniMoveTimeline();
+        timeline.detachRequested(T0.plusMillis(100));
+        timeline.detached(seen(null, T0.plusMillis(2100)));
+        timeline.attachRequested(T0.plusMillis(2200));
+        timeline.attached(seen(T0.plusMillis(7000), T0.plusMillis(7400)));
+        ResumeStats stats = new ResumeStats(T0,
+                new ResumeOutcome(false, false, 9000, false),
+                new ResumeOutcome(false, false, 8700, false));
+
+        Map<String, Double> phases = timeline.getPhaseMillis(stats);
+        assertEquals(2000.0, phases.get(EniMoveTimeline.DETACH_DURATION));
+        assertEquals(5000.0, phases.get(EniMoveTimeline.ATTACH_DURATION));
+        assertEquals(400.0, phases.get(EniMoveTimeline.ATTACH_SEEN_WINDOW));
+        assertEquals(1500.0, phases.get(EniMoveTimeline.ATTACH_TO_FIRST_QUERY));
+    }
+
+    public void testOnlyMeasuredPhasesAreReported() {
+        EniMoveTimeline timeline = new EniMoveTimeline();
+        timeline.detached(seen(null, T0));
+        timeline.attachRequested(T0.plusMillis(100));
+        timeline.attached(seen(null, T0.plusMillis(5100)));
+        ResumeStats failed = new ResumeStats(T0, new ResumeOutcome(false, true, -1, false), null);
+
+        Map<String, Double> phases = timeline.getPhaseMillis(failed);
+        assertEquals(Map.of(EniMoveTimeline.ATTACH_DURATION, 5000.0), phases);
+    }
+
+    public void testQueryBeforeEstimatedAttachIsNegative() {
+        EniMoveTimeline timeline = new EniMoveTimeline();
+        timeline.attachRequested(T0);
+        timeline.attached(seen(T0.plusMillis(4800), T0.plusMillis(5200)));
+        ResumeStats stats = new ResumeStats(T0, new ResumeOutcome(false, false, 4900, false), null);
+
+        Map<String, Double> phases = timeline.getPhaseMillis(stats);
+        assertEquals(-100.0, phases.get(EniMoveTimeline.ATTACH_TO_FIRST_QUERY));
+        assertEquals(400.0, phases.get(EniMoveTimeline.ATTACH_SEEN_WINDOW));
+    }
+
+    private static EniTracker.Observation seen(Instant missedAt, Instant seenAt) {
+        return new EniTracker.Observation(null, seenAt, missedAt);
+    }
+}
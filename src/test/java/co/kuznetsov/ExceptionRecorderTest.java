@@ -0,0 +1,66 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class ExceptionRecorderTest extends TestCase {
+
+    public ExceptionRecorderTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ExceptionRecorderTest.class);
+    }
+
+    public void testRepeatedExceptionsAreCountedAndDumpedOnce() throws Exception {
+        Path dir = Files.createTempDirectory("exceptions");
+        ExceptionRecorder recorder = new ExceptionRecorder(dir, 1024 * 1024, 2, 60000);
+        for (int i = 0; i < 1000; i++) {
+            recorder.record(connectionRefused(), null);
+        }
+        recorder.record(new IllegalStateException("other"), "other failure");
+        recorder.drain(5000);
+
+        Map<String, Long> top = recorder.getTopFingerprints(1);
+        assertEquals(1, top.size());
+        assertEquals(Long.valueOf(1000), top.values().iterator().next());
+        assertTrue(top.keySet().iterator().next().startsWith(IOException.class.getName()));
+
+        String log = Files.readString(dir.resolve("exceptions.log"));
+        assertEquals(1, count(log, "Connection refused"));
+        assertEquals(1, count(log, "other failure"));
+        assertTrue(recorder.describe(), recorder.describe().startsWith("1001 captured, 2 distinct"));
+    }
+
+    public void testLogIsRotatedBySize() throws Exception {
+        Path dir = Files.createTempDirectory("exceptions");
+        ExceptionRecorder recorder = new ExceptionRecorder(dir, 1, 2, 0);
+        for (int i = 0; i < 4; i++) {
+            recorder.record(connectionRefused(), null);
+            recorder.drain(5000);
+        }
+        assertTrue(Files.exists(dir.resolve("exceptions.log")));
+        assertTrue(Files.exists(dir.resolve("exceptions.log.1")));
+        assertTrue(Files.exists(dir.resolve("exceptions.log.2")));
+        assertFalse(Files.exists(dir.resolve("exceptions.log.3")));
+    }
+
+    private static IOException connectionRefused() {
+        return new IOException("Connection refused");
+    }
+
+    private static int count(String text, String needle) {
+        int count = 0;
+        for (int i = text.indexOf(needle); i >= 0; i = text.indexOf(needle, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,277 @@
+package co.kuznetsov;
+
+import javax.crypto.Cipher;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Just enough of a MySQL server to send a greeting, authenticate with mysql_native_password or caching_sha2_password
+ * (fast path, or full authentication with the RSA public key) and answer COM_QUERY with a one row result set.
+ * <p>
+ * The greeting delay counts from when the client recorded the end of its connect, if it times the attempt with
+ * {@link #newAttempt()}: the server accepts the connection before the client returns from connect, so counting from
+ * the accept would make the client see a shorter greeting phase than the delay.
+ */
+public class FakeMySqlServer implements AutoCloseable {
+    public enum Auth { NATIVE, CACHING_SHA2_FAST, CACHING_SHA2_FULL, SWITCH_TO_NATIVE }
+
+    private static final byte[] SEED = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+    private static final int CAPABILITIES = 0x00000001 | 0x00000008 | 0x00000200 | 0x00002000 | 0x00008000
+            | 0x00080000 | 0x00200000;
+
+    private final ServerSocket server;
+    private static final long CONNECT_SIGNAL_WAIT_MILLIS = 1000;
+
+    private final Auth auth;
+    private final String password;
+    private final long greetingDelayMillis;
+    private final long authDelayMillis;
+    private final KeyPair keyPair;
+    private final Thread acceptor;
+    private final BlockingQueue<Long> connects = new LinkedBlockingQueue<>();
+    private int sequence;
+
+    public FakeMySqlServer(Auth auth, String password, long greetingDelayMillis, long authDelayMillis) throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.auth = auth;
+        this.password = password;
+        this.greetingDelayMillis = greetingDelayMillis;
+        this.authDelayMillis = authDelayMillis;
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        this.acceptor = new Thread(this::acceptLoop, "fake-mysql");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * @return timings for a probe attempt against this server, which let it know when the client's connect is done
+     */
+    public AttemptTimings newAttempt() {
+        return new AttemptTimings(System.nanoTime()) {
+            @Override
+            public void phaseDone(Phase phase) {
+                super.phaseDone(phase);
+                if (phase == Phase.TCP_CONNECT) {
+                    connects.add(System.nanoTime());
+                }
+            }
+        };
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())), socket.getOutputStream());
+            } catch (IOException | GeneralSecurityException e) {
+                // The client went away or failed authentication; wait for the next one
+            }
+        }
+    }
+
+    private void serve(DataInputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        delayGreeting();
+        sequence = 0;
+        String plugin = auth == Auth.NATIVE ? MySqlWireProbe.NATIVE_PASSWORD : MySqlWireProbe.CACHING_SHA2_PASSWORD;
+        send(out, greeting(plugin));
+
+        byte[] response = readPacket(in);
+        int i = 32;
+        while (response[i] != 0) {
+            i++;
+        }
+        String user = new String(response, 32, i - 32, StandardCharsets.UTF_8);
+        int authLength = response[i + 1] & 0xFF;
+        byte[] scramble = Arrays.copyOfRange(response, i + 2, i + 2 + authLength);
+        Threads.sleep(authDelayMillis);
+
+        if (!authenticate(in, out, scramble)) {
+            send(out, error(1045, "28000", "Access denied for user '" + user + "'"));
+            return;
+        }
+        send(out, ok());
+
+        while (true) {
+            byte[] command = readPacket(in);
+            sequence = 1;
+            if (command[0] == 0x01) {
+                return;
+            }
+            send(out, new byte[]{1});
+            send(out, columnDefinition());
+            send(out, eof());
+            send(out, new byte[]{1, '1'});
+            send(out, eof());
+        }
+    }
+
+    private boolean authenticate(DataInputStream in, OutputStream out, byte[] scramble) throws IOException, GeneralSecurityException {
+        switch (auth) {
+            case NATIVE:
+                return Arrays.equals(scramble, MySqlWireProbe.nativePasswordScramble(password, SEED));
+            case SWITCH_TO_NATIVE: {
+                byte[] name = (MySqlWireProbe.NATIVE_PASSWORD + "\0").getBytes(StandardCharsets.US_ASCII);
+                byte[] request = new byte[1 + name.length + SEED.length + 1];
+                request[0] = (byte) 0xFE;
+                System.arraycopy(name, 0, request, 1, name.length);
+                System.arraycopy(SEED, 0, request, 1 + name.length, SEED.length);
+                send(out, request);
+                return Arrays.equals(readPacket(in), MySqlWireProbe.nativePasswordScramble(password, SEED));
+            }
+            case CACHING_SHA2_FAST:
+                if (!Arrays.equals(scramble, MySqlWireProbe.cachingSha2Scramble(password, SEED))) {
+                    return false;
+                }
+                send(out, new byte[]{1, 3});
+                return true;
+            default: {
+                send(out, new byte[]{1, 4});
+                byte[] request = readPacket(in);
+                if (request.length != 1 || request[0] != 2) {
+                    return false;
+                }
+                String pem = "-----BEGIN PUBLIC KEY-----\n"
+                        + Base64.getMimeEncoder().encodeToString(keyPair.getPublic().getEncoded())
+                        + "\n-----END PUBLIC KEY-----\n";
+                byte[] key = pem.getBytes(StandardCharsets.US_ASCII);
+                byte[] keyPacket = new byte[1 + key.length];
+                keyPacket[0] = 1;
+                System.arraycopy(key, 0, keyPacket, 1, key.length);
+                send(out, keyPacket);
+
+                Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-1AndMGF1Padding");
+                cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+                byte[] plain = cipher.doFinal(readPacket(in));
+                for (int i = 0; i < plain.length; i++) {
+                    plain[i] ^= SEED[i % SEED.length];
+                }
+                byte[] expected = (password + "\0").getBytes(StandardCharsets.UTF_8);
+                return MessageDigest.isEqual(expected, plain);
+            }
+        }
+    }
+
+    private byte[] readPacket(DataInputStream in) throws IOException {
+        int length = in.readUnsignedByte() | (in.readUnsignedByte() << 8) | (in.readUnsignedByte() << 16);
+        sequence = in.readUnsignedByte() + 1;
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private void send(OutputStream out, byte[] payload) throws IOException {
+        out.write(new byte[]{(byte) payload.length, (byte) (payload.length >> 8), (byte) (payload.length >> 16), (byte) sequence++});
+        out.write(payload);
+        out.flush();
+    }
+
+    private void delayGreeting() {
+        if (greetingDelayMillis == 0) {
+            return;
+        }
+        Long connectedNanos = null;
+        try {
+            connectedNanos = connects.poll(CONNECT_SIGNAL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long dueNanos = (connectedNanos != null ? connectedNanos : System.nanoTime())
+                + TimeUnit.MILLISECONDS.toNanos(greetingDelayMillis);
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static byte[] greeting(String plugin) {
+        byte[] version = "8.0.36-fake\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] name = (plugin + "\0").getBytes(StandardCharsets.US_ASCII);
+        byte[] greeting = new byte[1 + version.length + 4 + 8 + 1 + 2 + 1 + 2 + 2 + 1 + 10 + 13 + name.length];
+        int i = 0;
+        greeting[i++] = 10;
+        System.arraycopy(version, 0, greeting, i, version.length);
+        i += version.length + 4;
+        System.arraycopy(SEED, 0, greeting, i, 8);
+        i += 8 + 1;
+        greeting[i++] = (byte) CAPABILITIES;
+        greeting[i++] = (byte) (CAPABILITIES >> 8);
+        greeting[i++] = 45;
+        i += 2;
+        greeting[i++] = (byte) (CAPABILITIES >> 16);
+        greeting[i++] = (byte) (CAPABILITIES >> 24);
+        greeting[i++] = 21;
+        i += 10;
+        System.arraycopy(SEED, 8, greeting, i, 12);
+        i += 13;
+        System.arraycopy(name, 0, greeting, i, name.length);
+        return greeting;
+    }
+
+    private static byte[] ok() {
+        return new byte[]{0, 0, 0, 2, 0, 0, 0};
+    }
+
+    private static byte[] eof() {
+        return new byte[]{(byte) 0xFE, 0, 0, 2, 0};
+    }
+
+    private static byte[] error(int code, String sqlState, String message) {
+        byte[] text = ("#" + sqlState + message).getBytes(StandardCharsets.UTF_8);
+        byte[] error = new byte[3 + text.length];
+        error[0] = (byte) 0xFF;
+        error[1] = (byte) code;
+        error[2] = (byte) (code >> 8);
+        System.arraycopy(text, 0, error, 3, text.length);
+        return error;
+    }
+
+    private static byte[] columnDefinition() {
+        byte[][] strings = {"def".getBytes(StandardCharsets.US_ASCII), new byte[0], new byte[0], new byte[0],
+                "1".getBytes(StandardCharsets.US_ASCII), new byte[0]};
+        byte[] tail = {0x0C, 63, 0, 1, 0, 0, 0, 8, (byte) 0x81, 0, 0, 0, 0};
+        int length = tail.length;
+        for (byte[] s : strings) {
+            length += 1 + s.length;
+        }
+        byte[] definition = new byte[length];
+        int i = 0;
+        for (byte[] s : strings) {
+            definition[i++] = (byte) s.length;
+            System.arraycopy(s, 0, definition, i, s.length);
+            i += s.length;
+        }
+        System.arraycopy(tail, 0, definition, i, tail.length);
+        return definition;
+    }
+}
@@ -0,0 +1,238 @@
+package co.kuznetsov;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough of a PostgreSQL server to answer startup, trust/MD5/SCRAM-SHA-256 authentication and simple queries.
+ */
+public class FakePostgresServer implements AutoCloseable {
+    public enum Auth { TRUST, MD5, SCRAM }
+
+    private static final int SSL_REQUEST_CODE = 80877103;
+    private static final byte[] SALT = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+    private static final int ITERATIONS = 4096;
+
+    private final ServerSocket server;
+    private final Auth auth;
+    private final String password;
+    private final long startupDelayMillis;
+    private final Thread acceptor;
+
+    public FakePostgresServer(Auth auth, String password, long startupDelayMillis) throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.auth = auth;
+        this.password = password;
+        this.startupDelayMillis = startupDelayMillis;
+        this.acceptor = new Thread(this::acceptLoop, "fake-postgres");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                        new DataOutputStream(socket.getOutputStream()));
+            } catch (IOException | GeneralSecurityException e) {
+                // The client went away or failed authentication; wait for the next one
+            }
+        }
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException, GeneralSecurityException {
+        Map<String, String> startup = readStartup(in);
+        if (startup == null) {
+            out.writeByte('N');
+            out.flush();
+            startup = readStartup(in);
+        }
+        Threads.sleep(startupDelayMillis);
+
+        String user = startup.get("user");
+        if (!authenticate(in, out, user)) {
+            error(out, "28P01", "password authentication failed for user \"" + user + "\"");
+            return;
+        }
+        authOk(out);
+        message(out, 'S', "server_version\0" + "16.3\0");
+        message(out, 'K', new byte[8]);
+        readyForQuery(out);
+
+        while (true) {
+            char type = (char) in.readUnsignedByte();
+            byte[] body = new byte[in.readInt() - 4];
+            in.readFully(body);
+            if (type == 'X') {
+                return;
+            }
+            if (type != 'Q') {
+                error(out, "08P01", "unexpected message " + type);
+                return;
+            }
+            message(out, 'T', rowDescription());
+            message(out, 'D', new byte[]{0, 1, 0, 0, 0, 1, '1'});
+            message(out, 'C', "SELECT 1\0");
+            readyForQuery(out);
+        }
+    }
+
+    private Map<String, String> readStartup(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        int code = in.readInt();
+        if (code == SSL_REQUEST_CODE) {
+            return null;
+        }
+        byte[] body = new byte[length - 8];
+        in.readFully(body);
+        String[] parts = new String(body, StandardCharsets.UTF_8).split("\0");
+        Map<String, String> parameters = new HashMap<>();
+        for (int i = 0; i + 1 < parts.length; i += 2) {
+            parameters.put(parts[i], parts[i + 1]);
+        }
+        return parameters;
+    }
+
+    private boolean authenticate(DataInputStream in, DataOutputStream out, String user) throws IOException, GeneralSecurityException {
+        switch (auth) {
+            case TRUST:
+                return true;
+            case MD5: {
+                byte[] salt = {9, 8, 7, 6};
+                out.writeByte('R');
+                out.writeInt(12);
+                out.writeInt(5);
+                out.write(salt);
+                out.flush();
+                String response = readPassword(in);
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                byte[] inner = hex(md5.digest((password + user).getBytes(StandardCharsets.UTF_8))).getBytes(StandardCharsets.US_ASCII);
+                md5.update(inner);
+                md5.update(salt);
+                return response.equals("md5" + hex(md5.digest()));
+            }
+            default:
+                return authenticateScram(in, out);
+        }
+    }
+
+    private boolean authenticateScram(DataInputStream in, DataOutputStream out) throws IOException, GeneralSecurityException {
+        byte[] mechanisms = (Scram.MECHANISM + "\0\0").getBytes(StandardCharsets.US_ASCII);
+        out.writeByte('R');
+        out.writeInt(8 + mechanisms.length);
+        out.writeInt(10);
+        out.write(mechanisms);
+        out.flush();
+
+        DataInputStream initial = new DataInputStream(new ByteArrayInputStream(readMessage(in)));
+        while (initial.readByte() != 0) {
+            // skip the mechanism name
+        }
+        byte[] clientFirst = new byte[initial.readInt()];
+        initial.readFully(clientFirst);
+        String clientFirstBare = new String(clientFirst, StandardCharsets.UTF_8).substring(3);
+        String clientNonce = clientFirstBare.substring(clientFirstBare.indexOf("r=") + 2);
+
+        String serverFirst = "r=" + clientNonce + "server,s=" + Base64.getEncoder().encodeToString(SALT) + ",i=" + ITERATIONS;
+        saslMessage(out, 11, serverFirst);
+
+        String clientFinal = new String(readMessage(in), StandardCharsets.UTF_8);
+        String clientFinalWithoutProof = clientFinal.substring(0, clientFinal.indexOf(",p="));
+        byte[] proof = Base64.getDecoder().decode(clientFinal.substring(clientFinal.indexOf(",p=") + 3));
+        String authMessage = clientFirstBare + "," + serverFirst + "," + clientFinalWithoutProof;
+
+        byte[] saltedPassword = Scram.saltedPassword(password, SALT, ITERATIONS);
+        byte[] storedKey = Scram.sha256(Scram.clientKey(saltedPassword));
+        byte[] clientKey = Scram.xor(proof, Scram.hmac(storedKey, authMessage));
+        if (!MessageDigest.isEqual(storedKey, Scram.sha256(clientKey))) {
+            return false;
+        }
+        byte[] serverSignature = Scram.hmac(Scram.serverKey(saltedPassword), authMessage);
+        saslMessage(out, 12, "v=" + Base64.getEncoder().encodeToString(serverSignature));
+        return true;
+    }
+
+    private static String readPassword(DataInputStream in) throws IOException {
+        byte[] body = readMessage(in);
+        return new String(body, 0, body.length - 1, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readMessage(DataInputStream in) throws IOException {
+        in.readUnsignedByte();
+        byte[] body = new byte[in.readInt() - 4];
+        in.readFully(body);
+        return body;
+    }
+
+    private static void saslMessage(DataOutputStream out, int code, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        out.writeByte('R');
+        out.writeInt(8 + bytes.length);
+        out.writeInt(code);
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static void authOk(DataOutputStream out) throws IOException {
+        out.writeByte('R');
+        out.writeInt(8);
+        out.writeInt(0);
+    }
+
+    private static void readyForQuery(DataOutputStream out) throws IOException {
+        message(out, 'Z', new byte[]{'I'});
+        out.flush();
+    }
+
+    private static void error(DataOutputStream out, String sqlState, String text) throws IOException {
+        message(out, 'E', "SFATAL\0C" + sqlState + "\0M" + text + "\0\0");
+        out.flush();
+    }
+
+    private static byte[] rowDescription() {
+        byte[] name = "?column?\0".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + name.length + 18);
+        buffer.putShort((short) 1).put(name).putInt(0).putShort((short) 0).putInt(23).putShort((short) 4).putInt(-1).putShort((short) 0);
+        return buffer.array();
+    }
+
+    private static void message(DataOutputStream out, char type, String body) throws IOException {
+        message(out, type, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void message(DataOutputStream out, char type, byte[] body) throws IOException {
+        out.writeByte(type);
+        out.writeInt(4 + body.length);
+        out.write(body);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
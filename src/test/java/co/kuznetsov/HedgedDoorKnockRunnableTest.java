@@ -0,0 +1,82 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HedgedDoorKnockRunnableTest extends TestCase {
+
+    public HedgedDoorKnockRunnableTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(HedgedDoorKnockRunnableTest.class);
+    }
+
+    public void testWakeUpIsDetectedWithinTheStagger() throws Exception {
+        AtomicLong wakeUpNanos = new AtomicLong();
+        AtomicInteger knocks = new AtomicInteger();
+        Probe hangsUntilAwake = attempt -> {
+            knocks.incrementAndGet();
+            wakeUpNanos.compareAndSet(0, attempt.getStartNanos() + TimeUnit.MILLISECONDS.toNanos(100));
+            if (attempt.getStartNanos() < wakeUpNanos.get()) {
+                sleep(300);
+                throw new IOException("Connect timed out");
+            }
+            attempt.succeeded();
+            return attempt;
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>();
+            new HedgedDoorKnockRunnable(outcomeRef, hangsUntilAwake, 10000, null, 20, 25, executor).run();
+
+            ResumeOutcome outcome = outcomeRef.get();
+            assertFalse(outcome.isFailure());
+            assertTrue(outcome.getLastAttempt().getStartNanos() >= wakeUpNanos.get());
+            assertTrue(outcome.toString(), outcome.getDuration() >= 50 && outcome.getDuration() < 250);
+            assertTrue(outcome.toString(), outcome.getResolutionMillis() > 0 && outcome.getResolutionMillis() < 60);
+            assertTrue(knocks.get() >= 5);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testOutstandingAttemptsAreCapped() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Probe neverUp = attempt -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(100);
+            inFlight.decrementAndGet();
+            throw new IOException("Connect timed out");
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>();
+            new HedgedDoorKnockRunnable(outcomeRef, neverUp, 300, null, 5, 3, executor).run();
+
+            assertTrue(outcomeRef.get().isFailure());
+            assertEquals(3, maxInFlight.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public LatencyHistogramTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LatencyHistogramTest.class);
+    }
+
+    public void testPercentilesWithinTwoSignificantDigits() {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 4);
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.intervalSnapshot();
+        assertEquals(100000, snapshot.getTotalCount());
+        assertEquals(100000, snapshot.getMax());
+        assertEquals(50000, snapshot.getValueAtPercentile(50), 500);
+        assertEquals(99000, snapshot.getValueAtPercentile(99), 990);
+        assertEquals(99900, snapshot.getValueAtPercentile(99.9), 999);
+        assertEquals(50000, snapshot.getMean(), 500);
+    }
+
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 1);
+        for (int i = 0; i < 100; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.intervalSnapshot();
+        assertEquals(49, snapshot.getValueAtPercentile(50));
+        assertEquals(98, snapshot.getValueAtPercentile(99));
+    }
+
+    public void testIntervalSnapshotResets() {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 2);
+        histogram.record(1000);
+        assertEquals(1, histogram.intervalSnapshot().getTotalCount());
+        LatencyHistogram.Snapshot empty = histogram.intervalSnapshot();
+        assertEquals(0, empty.getTotalCount());
+        assertEquals(0, empty.getValueAtPercentile(99));
+    }
+
+    public void testMerge() {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 1);
+        histogram.record(100);
+        LatencyHistogram.Snapshot first = histogram.intervalSnapshot();
+        histogram.record(300000);
+        LatencyHistogram.Snapshot merged = first.merge(histogram.intervalSnapshot());
+        assertEquals(2, merged.getTotalCount());
+        assertEquals(300000, merged.getMax());
+        assertEquals(100, merged.getValueAtPercentile(50));
+    }
+
+    public void testValuesAboveRangeAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 1);
+        histogram.record(10000000);
+        LatencyHistogram.Snapshot snapshot = histogram.intervalSnapshot();
+        assertEquals(1, snapshot.getTotalCount());
+        assertEquals(10000000, snapshot.getMax());
+    }
+
+    public void testConcurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(600000, 2, 8);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        long drained = 0;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                drained += histogram.intervalSnapshot().getTotalCount();
+            }
+            thread.join();
+        }
+        drained += histogram.intervalSnapshot().getTotalCount();
+        assertEquals(80000, drained);
+    }
+}
@@ -0,0 +1,140 @@
+package co.kuznetsov;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+public class MetricsSinkTest extends TestCase {
+
+    public MetricsSinkTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MetricsSinkTest.class);
+    }
+
+    public void testNoSleepIsOnlyReportedWhenAsked() {
+        ResumeEvent v1 = new ResumeEvent(stats(100), false, ImmutableMap.of());
+        assertTrue(v1.isSuccess());
+        assertNull(v1.getNoSleep());
+        assertFalse(v1.getCounts().containsKey("noSleep"));
+
+        ResumeEvent v2 = new ResumeEvent(stats(100), true, ImmutableMap.of());
+        assertFalse(v2.isSuccess());
+        assertEquals(Boolean.TRUE, v2.getNoSleep());
+    }
+
+    public void testCloudWatchDatumsPerDimension() {
+        ResumeEvent event = new ResumeEvent(stats(1200), true, ImmutableMap.of("instanceId", "i-1", "engineVersion", "16.3"));
+        List<MetricDatum> datums = CloudWatchSink.datums(event, DimensionSets.parse(ImmutableList.of("none", "instanceId", "engineVersion", "region")));
+        // 5 counts and 2 durations, each without dimensions and once per dimension the event has
+        assertEquals(7 * 3, datums.size());
+        assertEquals(3, datums.stream().filter(d -> d.metricName().equals("resumeDuration")).count());
+    }
+
+    public void testAggregation() {
+        MetricsAggregator aggregator = new MetricsAggregator(
+                DimensionSets.parse(ImmutableList.of("none", "engineVersion", "instanceId+engineVersion")), Duration.ofMinutes(1));
+        Instant window = Instant.parse("2024-06-01T10:00:00Z");
+        for (int i = 0; i < 400; i++) {
+            ResumeStats stats = new ResumeStats(window.plusMillis(i * 100),
+                    new ResumeOutcome(false, i % 100 == 0, 1000 + i, false),
+                    new ResumeOutcome(false, false, 500, false));
+            aggregator.add(new ResumeEvent(stats, true, ImmutableMap.of("instanceId", "i-" + (i % 2), "engineVersion", "16.3")));
+        }
+        List<MetricDatum> datums = aggregator.drain();
+
+        MetricDatum failures = datums.stream()
+                .filter(d -> d.metricName().equals("failure") && d.dimensions().isEmpty())
+                .findFirst().get();
+        assertEquals(400.0, failures.statisticValues().sampleCount());
+        assertEquals(4.0, failures.statisticValues().sum());
+        assertEquals(window, failures.timestamp());
+
+        // 400 distinct durations need three datums of at most 150 values for each of the 1 + 1 + 2 rollups
+        long durationDatums = datums.stream().filter(d -> d.metricName().equals("resumeDuration")).count();
+        assertEquals(3 + 3 + 2 + 2, durationDatums);
+        double highResCount = datums.stream()
+                .filter(d -> d.metricName().equals("resumeDurationHighRes") && d.dimensions().isEmpty())
+                .mapToDouble(d -> d.counts().get(0)).sum();
+        assertEquals(400.0, highResCount);
+        assertTrue(aggregator.drain().isEmpty());
+    }
+
+    public void testNdjsonFile() throws Exception {
+        Path file = Files.createTempFile("resume-events", ".ndjson");
+        try {
+            try (NdjsonSink sink = NdjsonSink.toFile(file)) {
+                sink.accept(new ResumeEvent(stats(1200), true, ImmutableMap.of("instanceId", "i-\"1\"")));
+                assertEquals(1, Files.readAllLines(file).size());
+                sink.accept(new ResumeEvent(stats(1300), true, ImmutableMap.of()));
+            }
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(0), lines.get(0).contains("\"instanceId\":\"i-\\\"1\\\"\""));
+            assertTrue(lines.get(0), lines.get(0).contains("\"resumeDuration\":1200"));
+            assertTrue(lines.get(1), lines.get(1).contains("\"success\":1"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testBorrowedChannelIsFlushedButNotClosed() throws Exception {
+        Path file = Files.createTempFile("resume-events", ".ndjson");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            new NdjsonSink(channel, "borrowed", false).close();
+            assertTrue(channel.isOpen());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testStatsd() throws Exception {
+        try (DatagramChannel server = DatagramChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            try (StatsdSink sink = new StatsdSink("127.0.0.1", port, "canary")) {
+                sink.accept(new ResumeEvent(stats(1200), true, ImmutableMap.of("instanceId", "i-1")));
+            }
+            ByteBuffer datagram = ByteBuffer.allocate(2048);
+            server.receive(datagram);
+            datagram.flip();
+            String payload = StandardCharsets.UTF_8.decode(datagram).toString();
+            assertTrue(payload, payload.contains("canary.resumeDuration:1200|ms|#instanceId:i-1\n"));
+            assertTrue(payload, payload.contains("canary.success:1|c|#instanceId:i-1\n"));
+        }
+    }
+
+    public void testFanOutReachesEverySink() {
+        InMemorySink first = new InMemorySink();
+        InMemorySink second = new InMemorySink();
+        try (FanOutSink sink = new FanOutSink(ImmutableList.of(first, second))) {
+            sink.accept(new ResumeEvent(stats(1200), true, ImmutableMap.of()));
+        }
+        assertEquals(1, first.getEvents().size());
+        assertEquals(1, second.getEvents().size());
+    }
+
+    private static ResumeStats stats(long durationMillis) {
+        return new ResumeStats(Instant.now(),
+                new ResumeOutcome(false, false, durationMillis, false),
+                new ResumeOutcome(false, false, durationMillis / 2, false));
+    }
+}
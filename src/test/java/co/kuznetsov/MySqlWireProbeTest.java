@@ -0,0 +1,65 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MySqlWireProbeTest extends TestCase {
+
+    public MySqlWireProbeTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MySqlWireProbeTest.class);
+    }
+
+    public void testNativePassword() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.NATIVE, "secret", 0, 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testCachingSha2FastAuth() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.CACHING_SHA2_FAST, "secret", 0, 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testCachingSha2FullAuth() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.CACHING_SHA2_FULL, "secret", 0, 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testAuthSwitch() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.SWITCH_TO_NATIVE, "secret", 0, 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testWrongPassword() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.NATIVE, "secret", 0, 0)) {
+            knock(server, "wrong");
+            fail("Authentication should have failed");
+        } catch (ProbeProtocolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("1045/28000"));
+        }
+    }
+
+    public void testGreetingIsTimedSeparatelyFromAuth() throws Exception {
+        try (FakeMySqlServer server = new FakeMySqlServer(FakeMySqlServer.Auth.CACHING_SHA2_FAST, "secret", 100, 500)) {
+            AttemptTimings attempt = knock(server, "secret");
+            assertTrue(attempt.getPhaseMillis(AttemptTimings.Phase.SERVER_GREETING) >= 100);
+            assertTrue(attempt.getPhaseMillis(AttemptTimings.Phase.SERVER_GREETING) < 500);
+            assertTrue(attempt.getPhaseMillis(AttemptTimings.Phase.AUTH) >= 500);
+            assertTrue(attempt.getPhaseNanos(AttemptTimings.Phase.FIRST_QUERY) >= 0);
+            assertEquals(-1, attempt.getPhaseNanos(AttemptTimings.Phase.TLS));
+        }
+    }
+
+    private static AttemptTimings knock(FakeMySqlServer server, String password) throws Exception {
+        MySqlWireProbe probe = new MySqlWireProbe("127.0.0.1", server.getPort(), "canary", password, "", 5000, true);
+        return probe.knock(server.newAttempt());
+    }
+}
@@ -0,0 +1,43 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.time.Instant;
+import java.util.List;
+
+public class PauseDetectorTest extends TestCase {
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    public PauseDetectorTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PauseDetectorTest.class);
+    }
+
+    public void testMiddleOfEarliestZeroAfterIdleMinute() {
+        List<Instant> timestamps = List.of(T0.plusSeconds(420), T0.plusSeconds(360), T0.plusSeconds(300), T0.plusSeconds(240));
+        List<Double> values = List.of(0.0, 0.0, 0.5, 0.5);
+        assertEquals(T0.plusSeconds(390), PauseDetector.firstPause(timestamps, values, T0.plusSeconds(30)));
+    }
+
+    public void testZeroBeforeIdleMinuteIsAPreviousPause() {
+        List<Instant> timestamps = List.of(T0, T0.plusSeconds(60), T0.plusSeconds(120));
+        List<Double> values = List.of(0.0, 0.5, 0.5);
+        assertNull(PauseDetector.firstPause(timestamps, values, T0.plusSeconds(90)));
+    }
+
+    public void testZeroInIdleMinuteIsIgnored() {
+        List<Instant> timestamps = List.of(T0, T0.plusSeconds(60), T0.plusSeconds(120), T0.plusSeconds(180));
+        List<Double> values = List.of(0.0, 0.5, 0.5, 0.0);
+        assertEquals(T0.plusSeconds(210), PauseDetector.firstPause(timestamps, values, T0.plusSeconds(5)));
+        assertNull(PauseDetector.firstPause(timestamps.subList(0, 3), values.subList(0, 3), T0.plusSeconds(5)));
+    }
+
+    public void testNoDatapoints() {
+        assertNull(PauseDetector.firstPause(List.of(), List.of(), T0));
+    }
+}
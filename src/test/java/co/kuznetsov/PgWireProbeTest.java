@@ -0,0 +1,65 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class PgWireProbeTest extends TestCase {
+
+    public PgWireProbeTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PgWireProbeTest.class);
+    }
+
+    public void testTrust() throws Exception {
+        try (FakePostgresServer server = new FakePostgresServer(FakePostgresServer.Auth.TRUST, "secret", 0)) {
+            AttemptTimings attempt = knock(server, "secret");
+            assertTrue(attempt.isSuccess());
+        }
+    }
+
+    public void testMd5() throws Exception {
+        try (FakePostgresServer server = new FakePostgresServer(FakePostgresServer.Auth.MD5, "secret", 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testScram() throws Exception {
+        try (FakePostgresServer server = new FakePostgresServer(FakePostgresServer.Auth.SCRAM, "secret", 0)) {
+            assertTrue(knock(server, "secret").isSuccess());
+        }
+    }
+
+    public void testWrongPassword() throws Exception {
+        try (FakePostgresServer server = new FakePostgresServer(FakePostgresServer.Auth.SCRAM, "secret", 0)) {
+            knock(server, "wrong");
+            fail("Authentication should have failed");
+        } catch (ProbeProtocolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("28P01"));
+        }
+    }
+
+    public void testEveryStepIsTimed() throws Exception {
+        try (FakePostgresServer server = new FakePostgresServer(FakePostgresServer.Auth.MD5, "secret", 200)) {
+            AttemptTimings attempt = knock(server, "secret");
+            for (AttemptTimings.Phase phase : new AttemptTimings.Phase[]{
+                    AttemptTimings.Phase.DNS,
+                    AttemptTimings.Phase.TCP_CONNECT,
+                    AttemptTimings.Phase.AUTH,
+                    AttemptTimings.Phase.SESSION,
+                    AttemptTimings.Phase.FIRST_QUERY}) {
+                assertTrue(phase + " not timed", attempt.getPhaseNanos(phase) >= 0);
+            }
+            assertEquals(-1, attempt.getPhaseNanos(AttemptTimings.Phase.TLS));
+            assertTrue("Startup delay belongs to authentication", attempt.getPhaseMillis(AttemptTimings.Phase.AUTH) >= 200);
+        }
+    }
+
+    private static AttemptTimings knock(FakePostgresServer server, String password) throws Exception {
+        PgWireProbe probe = new PgWireProbe("127.0.0.1", server.getPort(), "canary", password, "jff", 5000, true);
+        return probe.knock(new AttemptTimings(System.nanoTime()));
+    }
+}
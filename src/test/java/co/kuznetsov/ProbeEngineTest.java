@@ -0,0 +1,110 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ProbeEngineTest extends TestCase {
+    private ExecutorService executor;
+    private ProbeEngine engine;
+
+    public ProbeEngineTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ProbeEngineTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        executor = Executors.newCachedThreadPool();
+        engine = new ProbeEngine(executor);
+    }
+
+    @Override
+    protected void tearDown() {
+        engine.close();
+        executor.shutdownNow();
+    }
+
+    public void testDeadlineClosesTheHangingConnection() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0)) {
+            Probe probe = new PgWireProbe("localhost", silent.getLocalPort(), "u", "p", "db", 30000, false);
+            long started = System.nanoTime();
+            CompletableFuture<ResumeOutcome> outcome = engine.probe(ref -> new DoorKnockRunnable(ref, probe, 30000), 200);
+
+            try (Socket accepted = silent.accept()) {
+                accepted.setSoTimeout(5000);
+                InputStream in = accepted.getInputStream();
+                while (in.read() >= 0) {
+                    // Startup message, then end of stream once the probe closes its socket
+                }
+            }
+            assertTrue(outcome.get().isFailure());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        }
+    }
+
+    public void testFirstSuccessCancelsTheRest() throws Exception {
+        CompletableFuture<ResumeOutcome> slow = engine.probe(ref -> new HFDoorKnockRunnable(ref, attempt -> {
+            throw new ConnectException("Connection refused");
+        }, 30000, null, 10), 30000);
+        CompletableFuture<ResumeOutcome> fast = engine.probe(ref -> new HFDoorKnockRunnable(ref, attempt -> {
+            attempt.succeeded();
+            return attempt;
+        }, 30000, null, 10), 30000);
+
+        ResumeOutcome first = ProbeEngine.firstSuccess(List.of(slow, fast)).get(5, TimeUnit.SECONDS);
+        assertFalse(first.isFailure());
+        assertTrue(slow.isCancelled());
+    }
+
+    public void testAllOfKeepsOrder() throws Exception {
+        CompletableFuture<ResumeOutcome> failing = engine.probe(ref -> new HFDoorKnockRunnable(ref, attempt -> {
+            throw new ConnectException("Connection refused");
+        }, 100, null, 10), 5000);
+        CompletableFuture<ResumeOutcome> succeeding = engine.probe(ref -> new HFDoorKnockRunnable(ref, attempt -> {
+            attempt.succeeded();
+            return attempt;
+        }, 5000, null, 10), 5000);
+
+        List<ResumeOutcome> outcomes = ProbeEngine.allOf(List.of(failing, succeeding)).get(5, TimeUnit.SECONDS);
+        assertTrue(outcomes.get(0).isFailure());
+        assertFalse(outcomes.get(1).isFailure());
+    }
+
+    public void testCancelReleasesProbeAndConnection() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0)) {
+            Probe probe = new PgWireProbe("localhost", silent.getLocalPort(), "u", "p", "db", 30000, false);
+            CompletableFuture<ResumeOutcome> outcome = engine.probe(ref -> new DoorKnockRunnable(ref, probe, 30000), 30000);
+            try (Socket accepted = silent.accept()) {
+                accepted.setSoTimeout(5000);
+                awaitGauges(1, 1);
+                outcome.cancel(true);
+                awaitGauges(0, 0);
+                accepted.getInputStream().readAllBytes();
+            }
+        }
+    }
+
+    private static void awaitGauges(int liveProbes, int openConnections) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((ProbeGauges.getLiveProbes() != liveProbes || ProbeGauges.getOpenConnections() != openConnections)
+                && System.nanoTime() < deadline) {
+            Threads.sleep(10);
+        }
+        assertEquals(liveProbes, ProbeGauges.getLiveProbes());
+        assertEquals(openConnections, ProbeGauges.getOpenConnections());
+    }
+}
@@ -0,0 +1,75 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ProbeScheduleTest extends TestCase {
+
+    public ProbeScheduleTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ProbeScheduleTest.class);
+    }
+
+    public void testFastFailuresArePaced() {
+        long start = System.nanoTime();
+        ProbeSchedule schedule = new ProbeSchedule(start, 20);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(start + i * TimeUnit.MILLISECONDS.toNanos(20), schedule.awaitNext());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180));
+        assertEquals(0, schedule.getOmitted());
+    }
+
+    public void testOverrunSlotsAreOmitted() throws Exception {
+        long start = System.nanoTime();
+        ProbeSchedule schedule = new ProbeSchedule(start, 20);
+        schedule.awaitNext();
+        Thread.sleep(70);
+        long intended = schedule.awaitNext();
+        assertTrue(intended - start >= TimeUnit.MILLISECONDS.toNanos(60));
+        assertTrue(System.nanoTime() - intended < TimeUnit.MILLISECONDS.toNanos(2 * 20));
+        assertTrue(schedule.getOmitted() >= 2);
+        assertEquals(intended + TimeUnit.MILLISECONDS.toNanos(20), schedule.awaitNext());
+    }
+
+    public void testHangingAttemptIsReportedNotSubtracted() {
+        AtomicInteger knocks = new AtomicInteger();
+        Probe hangsOnce = attempt -> {
+            if (knocks.incrementAndGet() == 1) {
+                sleep(300);
+                throw new IOException("Read timed out");
+            }
+            attempt.succeeded();
+            return attempt;
+        };
+        AtomicReference<ResumeOutcome> outcomeRef = new AtomicReference<>();
+        long started = System.nanoTime();
+        new HFDoorKnockRunnable(outcomeRef, hangsOnce, 10000, null, 25).run();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        ResumeOutcome outcome = outcomeRef.get();
+        assertFalse(outcome.isFailure());
+        assertEquals(2, outcome.getAttempts());
+        assertTrue(outcome.getDuration() + " vs " + elapsedMillis, outcome.getDuration() >= 300);
+        assertTrue(outcome.getDuration() + " vs " + elapsedMillis, outcome.getDuration() <= elapsedMillis);
+        assertTrue(outcome.toString(), outcome.getResolutionMillis() >= 300);
+        assertTrue(outcome.toString(), outcome.getScheduleLagMillis() < 2 * 25);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
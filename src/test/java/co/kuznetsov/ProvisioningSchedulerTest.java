@@ -0,0 +1,70 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ProvisioningSchedulerTest extends TestCase {
+    public ProvisioningSchedulerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ProvisioningSchedulerTest.class);
+    }
+
+    public void testExistingClustersGoFirst() throws Exception {
+        RateLimiter limiter = new RateLimiter(new TokenBucket(1, 4));
+        limiter.acquire(ProvisioningScheduler.Priority.DISCOVERY.ordinal());
+
+        List<ProvisioningScheduler.Priority> order = new CopyOnWriteArrayList<>();
+        Thread creating = waiter(limiter, ProvisioningScheduler.Priority.NEW, order);
+        while (limiter.getWaiting() < 1) {
+            Threads.sleep(1);
+        }
+        Thread existing = waiter(limiter, ProvisioningScheduler.Priority.EXISTING, order);
+        creating.join(5000);
+        existing.join(5000);
+
+        assertEquals(List.of(ProvisioningScheduler.Priority.EXISTING, ProvisioningScheduler.Priority.NEW), order);
+    }
+
+    public void testFleetIsUpOnceEveryInstanceIs() {
+        InMemorySink sink = new InMemorySink();
+        ProvisioningScheduler provisioning = new ProvisioningScheduler(2, 10, 1, sink);
+        provisioning.ready("i-1");
+        provisioning.ready("i-1");
+        assertEquals(-1, provisioning.getFleetBringUpMillis());
+        assertTrue(sink.getFleetMetrics().isEmpty());
+        provisioning.ready("i-2");
+        assertTrue(provisioning.getFleetBringUpMillis() >= 0);
+        assertEquals(Map.of(ProvisioningScheduler.FLEET_BRING_UP, provisioning.getFleetBringUpMillis()), sink.getFleetMetrics());
+    }
+
+    public void testFleetFirstProbeWaitsForEveryInstance() {
+        InMemorySink sink = new InMemorySink();
+        ProvisioningScheduler provisioning = new ProvisioningScheduler(2, 10, 1, sink);
+        provisioning.probing("i-1");
+        provisioning.probing("i-1");
+        assertEquals(-1, provisioning.getFleetFirstProbeMillis());
+        assertEquals(Set.of(ProvisioningScheduler.FIRST_PROBE), sink.getFleetMetrics().keySet());
+        provisioning.probing("i-2");
+        assertTrue(provisioning.getFleetFirstProbeMillis() >= 0);
+        assertEquals(provisioning.getFleetFirstProbeMillis(), (long) sink.getFleetMetrics().get(ProvisioningScheduler.FLEET_FIRST_PROBE));
+    }
+
+    private static Thread waiter(RateLimiter limiter, ProvisioningScheduler.Priority priority,
+                                 List<ProvisioningScheduler.Priority> order) {
+        Thread t = new Thread(() -> {
+            limiter.acquire(priority.ordinal());
+            order.add(priority);
+        });
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,114 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetrierTest extends TestCase {
+    private static final RetryPolicy FAST = new RetryPolicy(1, 5, 0, Set.of("IncorrectState"));
+
+    public RetrierTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(RetrierTest.class);
+    }
+
+    public void testThrottlingIsRetriedAndCounted() {
+        Retrier retrier = new Retrier(new TokenBucket(100, 1000), 100, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        String result = retrier.call("rds.Describe", FAST, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw error(400, "Throttling");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(2, retrier.getRetries("rds.Describe"));
+        assertEquals(2, retrier.getThrottles("rds.Describe"));
+        assertEquals(1, retrier.drainDeltas().size());
+        assertTrue(retrier.drainDeltas().isEmpty());
+    }
+
+    public void testTerminalErrorIsNotRetried() {
+        Retrier retrier = new Retrier(new TokenBucket(100, 1000), 100, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            retrier.run("rds.Create", FAST, () -> {
+                calls.incrementAndGet();
+                throw error(400, "InvalidParameterValue");
+            });
+            fail("Expected the terminal error to be rethrown");
+        } catch (AwsServiceException expected) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    public void testPolicyRetryableCodeIsRetried() {
+        Retrier retrier = new Retrier(new TokenBucket(100, 1000), 100, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        retrier.run("ec2.Attach", FAST, () -> {
+            if (calls.incrementAndGet() < 2) {
+                throw error(400, "IncorrectState");
+            }
+        });
+        assertEquals(2, calls.get());
+        assertEquals(0, retrier.getThrottles("ec2.Attach"));
+    }
+
+    public void testBreakerOpensAndRecovers() {
+        Retrier retrier = new Retrier(new TokenBucket(100, 1000), 2, 200);
+        AtomicInteger calls = new AtomicInteger();
+        long started = System.nanoTime();
+        retrier.run("logs.Put", FAST, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw error(503, "ServiceUnavailable");
+            }
+        });
+        assertTrue(System.nanoTime() - started >= 200_000_000L);
+        assertFalse(retrier.isOpen("logs.Put"));
+    }
+
+    public void testEmptyBudgetDelaysRetries() {
+        Retrier retrier = new Retrier(new TokenBucket(1, 5), 100, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        long started = System.nanoTime();
+        retrier.run("cw.Put", FAST, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw error(500, "InternalFailure");
+            }
+        });
+        // The second retry waits for a token at 5 a second
+        assertTrue(System.nanoTime() - started >= 150_000_000L);
+    }
+
+    public void testInterruptStopsRetrying() {
+        Retrier retrier = new Retrier(new TokenBucket(100, 1000), 100, 1000);
+        Thread.currentThread().interrupt();
+        try {
+            retrier.run("rds.Describe", FAST, () -> {
+                throw error(400, "Throttling");
+            });
+            fail("Expected the retry loop to give up");
+        } catch (CancellationException expected) {
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static AwsServiceException error(int status, String code) {
+        return AwsServiceException.builder()
+                .statusCode(status)
+                .message(code)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(code).build())
+                .build();
+    }
+}
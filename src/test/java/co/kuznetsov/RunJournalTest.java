@@ -0,0 +1,89 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+public class RunJournalTest extends TestCase {
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    private Path directory;
+
+    public RunJournalTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(RunJournalTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    public void testReopenRecoversIdleCountdown() throws Exception {
+        Path path = directory.resolve("canary.journal");
+        RunJournal journal = RunJournal.open(path, 16);
+        journal.append(3, 0, RunJournal.Transition.PROVISIONED, T0, 0);
+        journal.append(3, 4, RunJournal.Transition.PROBED_READY, T0.plusSeconds(60), 0);
+        journal.append(3, 4, RunJournal.Transition.IDLE_SINCE, T0.plusSeconds(61), 700);
+        journal.append(5, 2, RunJournal.Transition.RESUME_STARTED, T0.plusSeconds(90), 0);
+        journal.close();
+
+        RunJournal reopened = RunJournal.open(path, 16);
+        RunJournal.WorkerState state = reopened.getState(3);
+        assertTrue(state.isIdle());
+        assertEquals(4, state.getRun());
+        assertEquals(T0.plusSeconds(61), state.getIdleSince());
+        assertEquals(700, state.getMaxIdleSeconds());
+        assertEquals(T0, state.getTime(RunJournal.Transition.PROVISIONED));
+        assertFalse(reopened.getState(5).isIdle());
+        assertNull(reopened.getState(7));
+        reopened.close();
+    }
+
+    public void testDamagedTailIsDropped() throws Exception {
+        Path path = directory.resolve("canary.journal");
+        RunJournal journal = RunJournal.open(path, 16);
+        journal.append(1, 0, RunJournal.Transition.IDLE_SINCE, T0, 600);
+        journal.append(1, 0, RunJournal.Transition.RESUME_STARTED, T0.plusSeconds(600), 0);
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(RunJournal.RECORD_BYTES + 8);
+            file.writeLong(0);
+        }
+
+        RunJournal reopened = RunJournal.open(path, 16);
+        assertTrue(reopened.getState(1).isIdle());
+        reopened.append(1, 0, RunJournal.Transition.RESUME_STARTED, T0.plusSeconds(601), 0);
+        reopened.close();
+        assertFalse(RunJournal.open(path, 16).getState(1).isIdle());
+    }
+
+    public void testCompactionKeepsLatestTransitions() throws Exception {
+        Path path = directory.resolve("canary.journal");
+        RunJournal journal = RunJournal.open(path, 8);
+        for (int run = 0; run < 100; run++) {
+            for (int worker = 0; worker < 2; worker++) {
+                journal.append(worker, run, RunJournal.Transition.IDLE_SINCE, T0.plusSeconds(run), run);
+                journal.append(worker, run, RunJournal.Transition.RESUME_STARTED, T0.plusSeconds(run + 1), 0);
+            }
+        }
+        journal.append(1, 100, RunJournal.Transition.IDLE_SINCE, T0.plusSeconds(100), 100);
+        journal.close();
+
+        assertEquals(8L * RunJournal.RECORD_BYTES, Files.size(path));
+        RunJournal reopened = RunJournal.open(path, 8);
+        assertEquals(99, reopened.getState(0).getRun());
+        assertFalse(reopened.getState(0).isIdle());
+        assertEquals(100, reopened.getState(1).getMaxIdleSeconds());
+        assertTrue(reopened.getState(1).isIdle());
+        reopened.close();
+    }
+}
@@ -0,0 +1,100 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class StructuredLoggerTest extends TestCase {
+
+    public StructuredLoggerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(StructuredLoggerTest.class);
+    }
+
+    public void testRecordsAreKeyValueLines() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StructuredLogger logger = new StructuredLogger(new PrintStream(out, true), 16, 0);
+        logger.info("probe.failure", "instanceId", "db-1", "attempt", 3, "phase", null, "error", "Connection refused");
+        logger.flush(5000);
+
+        String line = out.toString().trim();
+        assertTrue(line, line.contains(" INFO probe.failure thread=" + Thread.currentThread().getName()));
+        assertTrue(line, line.endsWith(" instanceId=db-1 attempt=3 error=\"Connection refused\""));
+    }
+
+    public void testRepeatedRecordsAreSampled() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StructuredLogger logger = new StructuredLogger(new PrintStream(out, true), 1024, 2);
+        for (int i = 0; i < 100; i++) {
+            logger.info("probe.failure", "instanceId", "db-1", "attempt", i);
+        }
+        logger.info("probe.failure", "instanceId", "db-2", "attempt", 0);
+        logger.flush(5000);
+
+        List<String> lines = lines(out);
+        assertEquals(3, lines.size());
+        assertEquals(98, logger.getSuppressed());
+        assertTrue(lines.get(2), lines.get(2).contains("instanceId=db-2"));
+    }
+
+    public void testIdleWriterWakesUpForTheNextRecord() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StructuredLogger logger = new StructuredLogger(new PrintStream(out, true), 16, 0);
+        Threads.sleep(100);
+        long started = System.nanoTime();
+        logger.info("probe.success", "instanceId", "db-1");
+        logger.flush(5000);
+
+        assertEquals(1, lines(out).size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 500);
+    }
+
+    public void testFullRingDropsInsteadOfBlocking() throws Exception {
+        PrintStream slow = new PrintStream(new ByteArrayOutputStream()) {
+            @Override
+            public void print(Object obj) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        StructuredLogger logger = new StructuredLogger(slow, 8, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    logger.info("probe.attempt", "attempt", i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long started = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(System.nanoTime() - started < 2_000_000_000L);
+        assertTrue(logger.describe(), logger.getDropped() > 0);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        List<String> lines = new ArrayList<>();
+        for (String line : out.toString().split(System.lineSeparator())) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
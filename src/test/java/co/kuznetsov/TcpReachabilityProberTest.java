@@ -0,0 +1,62 @@
+package co.kuznetsov;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+public class TcpReachabilityProberTest extends TestCase {
+    private static final long RETRY_MILLIS = 20;
+    private static final long SLACK_MILLIS = 100;
+
+    public TcpReachabilityProberTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TcpReachabilityProberTest.class);
+    }
+
+    public void testReachableWithinRetryIntervalOfOpening() throws Exception {
+        TcpReachabilityProber prober = new TcpReachabilityProber(RETRY_MILLIS);
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        long watchStarted = System.nanoTime();
+        var result = prober.watch("127.0.0.1", port, 5000);
+        Threads.sleep(300);
+        assertFalse(result.isDone());
+
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+            long openedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - watchStarted);
+
+            TcpReachability reachability = result.get(5, TimeUnit.SECONDS);
+            assertTrue(reachability.isReachable());
+            assertTrue(reachability.getAttempts() > 1);
+            assertTrue(reachability.toString(), reachability.getElapsedMillis() >= openedMillis - 1);
+            assertTrue(reachability.toString(), reachability.getElapsedMillis() <= openedMillis + RETRY_MILLIS + SLACK_MILLIS);
+        } finally {
+            prober.shutdown();
+        }
+    }
+
+    public void testUnresolvableHostDoesNotStopTheProber() throws Exception {
+        TcpReachabilityProber prober = new TcpReachabilityProber(RETRY_MILLIS);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            TcpReachability unresolved = prober.watch("no-such-host.invalid", server.getLocalPort(), 200).get(5, TimeUnit.SECONDS);
+            assertFalse(unresolved.isReachable());
+
+            TcpReachability reachable = prober.watch("127.0.0.1", server.getLocalPort(), 5000).get(5, TimeUnit.SECONDS);
+            assertTrue(reachable.isReachable());
+        } finally {
+            prober.shutdown();
+        }
+    }
+}